@@ -0,0 +1,377 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ *
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+
+/**
+ * This reader decodes a stream of UTF-8, US-ASCII or ISO-8859-1 bytes. Runs
+ * of ASCII bytes, which make up nearly all markup, are copied to the output
+ * in a tight loop; only the bytes of non-ASCII characters are decoded.
+ * Malformed input is replaced by U+FFFD, like InputStreamReader does.
+ *
+ */
+class ByteStreamReader
+   extends Reader
+{
+
+   /**
+    * The UTF-8 encoding.
+    */
+   static final int UTF_8 = 0;
+
+
+   /**
+    * The ISO-8859-1 encoding.
+    */
+   static final int ISO_8859_1 = 1;
+
+
+   /**
+    * The US-ASCII encoding.
+    */
+   static final int US_ASCII = 2;
+
+
+   /**
+    * The replacement character for malformed input.
+    */
+   private static final char REPLACEMENT = '\uFFFD';
+
+
+   /**
+    * The encapsulated stream.
+    */
+   private InputStream stream;
+
+
+   /**
+    * The encoding, which is one of UTF_8, ISO_8859_1 or US_ASCII.
+    */
+   private int encoding;
+
+
+   /**
+    * The bytes read from the stream.
+    */
+   private byte[] bytes;
+
+
+   /**
+    * The position of the first byte that has not been decoded yet.
+    */
+   private int position;
+
+
+   /**
+    * The position after the last byte read from the stream.
+    */
+   private int limit;
+
+
+   /**
+    * The low surrogate of a supplementary character that did not fit in the
+    * output of the previous read, or 0.
+    */
+   private char pendingChar;
+
+
+   /**
+    * Returns the constant for an encoding that can be decoded by this reader.
+    *
+    * @param charset the character set of the encoding
+    *
+    * @return UTF_8, ISO_8859_1 or US_ASCII, or -1 if the encoding is not
+    *         supported by this reader
+    */
+   static int getEncoding(Charset charset)
+   {
+      String name = charset.name();
+
+      if (name.equals("UTF-8")) {
+         return UTF_8;
+      } else if (name.equals("ISO-8859-1")) {
+         return ISO_8859_1;
+      } else if (name.equals("US-ASCII")) {
+         return US_ASCII;
+      } else {
+         return -1;
+      }
+   }
+
+
+   /**
+    * Creates the reader from bytes which have already been read from the
+    * stream. The array is used as the buffer of the reader; it has to be
+    * large enough to hold a complete character.
+    *
+    * @param stream   the encapsulated stream
+    * @param encoding UTF_8, ISO_8859_1 or US_ASCII
+    * @param bytes    the bytes which have already been read
+    * @param position the position of the first byte to decode
+    * @param limit    the position after the last byte read
+    */
+   ByteStreamReader(InputStream stream,
+                    int         encoding,
+                    byte[]      bytes,
+                    int         position,
+                    int         limit)
+   {
+      this.stream = stream;
+      this.encoding = encoding;
+      this.bytes = bytes;
+      this.position = position;
+      this.limit = limit;
+      this.pendingChar = 0;
+   }
+
+
+   /**
+    * Cleans up the object when it's destroyed.
+    */
+   protected void finalize()
+      throws Throwable
+   {
+      this.stream = null;
+      this.bytes = null;
+      super.finalize();
+   }
+
+
+   /**
+    * Makes sure that at least <code>count</code> bytes are available in the
+    * buffer, unless the end of the stream has been reached.
+    *
+    * @param count the number of bytes needed
+    *
+    * @return true if the bytes are available
+    *
+    * @throws java.io.IOException
+    *		if an error occurred reading the data
+    */
+   private boolean ensure(int count)
+      throws IOException
+   {
+      if ((this.limit - this.position) >= count) {
+         return true;
+      }
+
+      int remaining = this.limit - this.position;
+      System.arraycopy(this.bytes, this.position, this.bytes, 0, remaining);
+      this.position = 0;
+      this.limit = remaining;
+
+      while (this.limit < count) {
+         int size = this.stream.read(this.bytes, this.limit,
+                                     this.bytes.length - this.limit);
+
+         if (size < 0) {
+            return false;
+         }
+
+         this.limit += size;
+      }
+
+      return true;
+   }
+
+
+   /**
+    * Reads a block of data.
+    *
+    * @param buffer where to put the read data
+    * @param offset first position in buffer to put the data
+    * @param size maximum number of chars to read
+    *
+    * @return the number of chars read, or -1 if at EOF
+    *
+    * @throws java.io.IOException
+    *		if an error occurred reading the data
+    */
+   public int read(char[] buffer,
+                   int    offset,
+                   int    size)
+      throws IOException
+   {
+      int index = offset;
+      int end = offset + size;
+
+      if ((this.pendingChar != 0) && (index < end)) {
+         buffer[index++] = this.pendingChar;
+         this.pendingChar = 0;
+      }
+
+      while (index < end) {
+         if (this.position >= this.limit) {
+            if ((index > offset) || (! this.ensure(1))) {
+               break;
+            }
+         }
+
+         byte[] bytes = this.bytes;
+         int pos = this.position;
+         int stop = pos + Math.min(end - index, this.limit - pos);
+
+         if (this.encoding == ISO_8859_1) {
+            while (pos < stop) {
+               buffer[index++] = (char) (bytes[pos++] & 0xFF);
+            }
+
+            this.position = pos;
+            continue;
+         }
+
+         while ((pos < stop) && (bytes[pos] >= 0)) {
+            buffer[index++] = (char) bytes[pos++];
+         }
+
+         this.position = pos;
+
+         if ((pos < stop) && (index < end)) {
+            index = this.decodeCharacter(buffer, index, end);
+         }
+      }
+
+      if (index == offset) {
+         return -1;
+      }
+
+      return index - offset;
+   }
+
+
+   /**
+    * Decodes a non-ASCII character.
+    *
+    * @param buffer where to put the character
+    * @param index  the position in the buffer where to put the character
+    * @param end    the position after the last usable slot in the buffer
+    *
+    * @return the position after the character in the buffer
+    *
+    * @throws java.io.IOException
+    *		if an error occurred reading the data
+    */
+   private int decodeCharacter(char[] buffer,
+                               int    index,
+                               int    end)
+      throws IOException
+   {
+      int b = this.bytes[this.position] & 0xFF;
+      int extraBytes;
+      int lowest = 0x80;
+      int highest = 0xBF;
+      int ch;
+
+      if (this.encoding == US_ASCII) {
+         extraBytes = -1;
+         ch = 0;
+      } else if ((b >= 0xC2) && (b <= 0xDF)) {
+         extraBytes = 1;
+         ch = b & 0x1F;
+      } else if ((b >= 0xE0) && (b <= 0xEF)) {
+         extraBytes = 2;
+         ch = b & 0x0F;
+         lowest = (b == 0xE0) ? 0xA0 : 0x80;
+         highest = (b == 0xED) ? 0x9F : 0xBF;
+      } else if ((b >= 0xF0) && (b <= 0xF4)) {
+         extraBytes = 3;
+         ch = b & 0x07;
+         lowest = (b == 0xF0) ? 0x90 : 0x80;
+         highest = (b == 0xF4) ? 0x8F : 0xBF;
+      } else {
+         extraBytes = -1;
+         ch = 0;
+      }
+
+      if (extraBytes < 0) {
+         this.position++;
+         buffer[index++] = REPLACEMENT;
+         return index;
+      }
+
+      this.ensure(extraBytes + 1);
+
+      for (int i = 1; i <= extraBytes; i++) {
+         if ((this.position + i) >= this.limit) {
+            this.position += i;
+            buffer[index++] = REPLACEMENT;
+            return index;
+         }
+
+         b = this.bytes[this.position + i] & 0xFF;
+
+         if ((b < lowest) || (b > highest)) {
+            this.position += i;
+            buffer[index++] = REPLACEMENT;
+            return index;
+         }
+
+         ch = (ch << 6) | (b & 0x3F);
+         lowest = 0x80;
+         highest = 0xBF;
+      }
+
+      this.position += extraBytes + 1;
+
+      if (ch < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+         buffer[index++] = (char) ch;
+      } else {
+         buffer[index++] = Character.highSurrogate(ch);
+
+         if (index < end) {
+            buffer[index++] = Character.lowSurrogate(ch);
+         } else {
+            this.pendingChar = Character.lowSurrogate(ch);
+         }
+      }
+
+      return index;
+   }
+
+
+   /**
+    * Closes the stream.
+    *
+    * @throws java.io.IOException
+    *		if an error occurred closing the stream
+    */
+   public void close()
+      throws IOException
+   {
+      this.stream.close();
+   }
+
+}
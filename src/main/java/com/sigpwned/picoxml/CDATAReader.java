@@ -116,6 +116,13 @@ class CDATAReader
          char ch = this.savedChar;
 
          if (ch == 0) {
+            charsRead += this.reader.readUntil(buffer, offset + charsRead,
+                                               size - charsRead, "]");
+
+            if (charsRead == size) {
+               break;
+            }
+
             ch = this.reader.read();
          } else {
             this.savedChar = 0;
@@ -138,7 +145,7 @@ class CDATAReader
                this.reader.unread(ch2);
             }
          }
-         buffer[charsRead] = ch;
+         buffer[offset + charsRead] = ch;
          charsRead++;
       }
 
@@ -159,33 +166,16 @@ class CDATAReader
    public void close()
       throws IOException
    {
-      while (! this.atEndOfData) {
-         char ch = this.savedChar;
-
-         if (ch == 0) {
-            ch = this.reader.read();
-         } else {
-            this.savedChar = 0;
-         }
-
-         if (ch == ']') {
-            char ch2 = this.reader.read();
-
-            if (ch2 == ']') {
-               char ch3 = this.reader.read();
-
-               if (ch3 == '>') {
-                  break;
-               }
+      if (this.atEndOfData) {
+         return;
+      }
 
-               this.savedChar = ch2;
-               this.reader.unread(ch3);
-            } else {
-               this.reader.unread(ch2);
-            }
-         }
+      if (this.savedChar != 0) {
+         this.reader.unread(this.savedChar);
+         this.savedChar = 0;
       }
 
+      this.reader.skipPast("]]>");
       this.atEndOfData = true;
    }
 
@@ -65,6 +65,12 @@ class ContentReader
     * The entity resolver.
     */
    private IXMLEntityResolver resolver;
+
+
+   /**
+    * The tokenizer.
+    */
+   private XMLTokenizer tokenizer;
     
 
    /**
@@ -72,14 +78,17 @@ class ContentReader
     *
     * @param reader the encapsulated reader
     * @param resolver the entity resolver
+    * @param tokenizer the tokenizer
     * @param buffer data that has already been read from <code>reader</code>
     */
    ContentReader(IXMLReader         reader,
                  IXMLEntityResolver resolver,
+                 XMLTokenizer       tokenizer,
                  String             buffer)
    {
       this.reader = reader;
       this.resolver = resolver;
+      this.tokenizer = tokenizer;
       this.buffer = buffer;
       this.bufferIndex = 0;
    }
@@ -93,6 +102,7 @@ class ContentReader
    {
       this.reader = null;
       this.resolver = null;
+      this.tokenizer = null;
       this.buffer = null;
       super.finalize();
    }
@@ -124,35 +134,49 @@ class ContentReader
          }
 
          while (charsRead < size) {
-            String str = "";
-            char ch;
-
-            if (this.bufferIndex >= bufferLength) {
-               str = XMLUtil.read(this.reader, '&');
-               ch = str.charAt(0);
-            } else {
-               ch = this.buffer.charAt(this.bufferIndex);
+            if (this.bufferIndex < bufferLength) {
+               outputBuffer[offset + charsRead]
+                  = this.buffer.charAt(this.bufferIndex);
                this.bufferIndex++;
-               outputBuffer[charsRead] = ch;
                charsRead++;
                continue; // don't interprete chars in the buffer
             }
 
-            if (ch == '<') {
-               this.reader.unread(ch);
+            charsRead += this.reader.readUntil(outputBuffer,
+                                               offset + charsRead,
+                                               size - charsRead, "<&");
+
+            if (charsRead == size) {
                break;
             }
 
-            if ((ch == '&') && (str.length() > 1)) {
-               if (str.charAt(1) == '#') {
-                  ch = XMLUtil.processCharLiteral(str);
+            int token = this.tokenizer.read(this.reader, '&');
+            char ch;
+
+            if (token == '<') {
+               this.reader.unread('<');
+               break;
+            } else if (token == XMLTokenizer.CHARACTER_REFERENCE) {
+               ch = this.tokenizer.getCharacter();
+            } else if (token == XMLTokenizer.ENTITY_REFERENCE) {
+               String entity = this.tokenizer.getEntityName();
+               String literal = XMLUtil.getLiteralEntity(entity,
+                                                         this.resolver);
+
+               if (literal != null) {
+                  this.buffer = literal;
+                  this.bufferIndex = 0;
+                  bufferLength = literal.length();
                } else {
-                  XMLUtil.processEntity(str, this.reader, this.resolver);
-                  continue;
+                  XMLUtil.processEntity(entity, this.reader, this.resolver);
                }
+
+               continue;
+            } else {
+               ch = (char) token;
             }
 
-            outputBuffer[charsRead] = ch;
+            outputBuffer[offset + charsRead] = ch;
             charsRead++;
          }
 
@@ -179,27 +203,27 @@ class ContentReader
       try {
          int bufferLength = this.buffer.length();
 
-         for (;;) {
-            String str = "";
-            char ch;
+         char[] skipBuffer = new char[1024];
+         this.bufferIndex = bufferLength; // skip the buffered chars
 
-            if (this.bufferIndex >= bufferLength) {
-               str = XMLUtil.read(this.reader, '&');
-               ch = str.charAt(0);
-            } else {
-               ch = this.buffer.charAt(this.bufferIndex);
-               this.bufferIndex++;
-               continue; // don't interprete chars in the buffer
+         for (;;) {
+            while (this.reader.readUntil(skipBuffer, 0, skipBuffer.length,
+                                         "<&") == skipBuffer.length) {
+               // skip the text
             }
 
-            if (ch == '<') {
-               this.reader.unread(ch);
+            int token = this.tokenizer.read(this.reader, '&');
+
+            if (token == '<') {
+               this.reader.unread('<');
                break;
             }
 
-            if ((ch == '&') && (str.length() > 1)) {
-               if (str.charAt(1) != '#') {
-                  XMLUtil.processEntity(str, this.reader, this.resolver);
+            if (token == XMLTokenizer.ENTITY_REFERENCE) {
+               String entity = this.tokenizer.getEntityName();
+
+               if (XMLUtil.getLiteralEntity(entity, this.resolver) == null) {
+                  XMLUtil.processEntity(entity, this.reader, this.resolver);
                }
             }
          }
@@ -42,7 +42,9 @@ import java.io.IOException;
  * If a method of the builder throws an exception, the parsing is aborted and
  * {@link com.sigpwned.picoxml.IXMLParser#parse} throws an
  * {@link com.sigpwned.picoxml.XMLException} which encasulates the original
- * exception.
+ * exception. A method may throw an
+ * {@link com.sigpwned.picoxml.XMLStopParsingException} to stop the parsing
+ * early; the parser then returns the result which has been built so far.
  *
  * @see com.sigpwned.picoxml.IXMLParser
  *
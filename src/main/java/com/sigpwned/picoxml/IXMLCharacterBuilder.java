@@ -0,0 +1,75 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+/**
+ * IXMLCharacterBuilder is a builder which receives text as a slice of a
+ * character array owned by the parser, instead of through a Java reader.
+ * No objects are created for the text, so builders which only inspect or
+ * hash it do not allocate anything per text node.
+ * <P>
+ * The parser calls <I>addCharacters</I> instead of <I>addPCData</I> for
+ * text and CDATA sections. The array is reused by the parser: its content
+ * is only valid during the call and must not be modified.
+ *
+ * @see com.sigpwned.picoxml.IXMLBuilder
+ *
+ */
+public interface IXMLCharacterBuilder
+   extends IXMLBuilder
+{
+
+   /**
+    * This method is called when a PCDATA element is encountered. Entities
+    * have been resolved by the parser. The whole text of the PCDATA element
+    * is passed in one call, unless a text chunk size has been set on the
+    * parser: longer text is then passed in several consecutive calls.
+    *
+    * @see com.sigpwned.picoxml.StdXMLParser#setTextChunkSize
+    *
+    * @param buffer   the array which contains the text. It may only be read
+    *                 during the call.
+    * @param offset   the position in the array of the first character.
+    * @param length   the number of characters.
+    * @param systemID the system ID of the XML data source.
+    * @param lineNr   the line in the source where the element starts.
+    *
+    * @throws java.lang.Exception
+    *     If an exception occurred while processing the event.
+    */
+   public void addCharacters(char[] buffer,
+                             int    offset,
+                             int    length,
+                             String systemID,
+                             int    lineNr)
+      throws Exception;
+
+}
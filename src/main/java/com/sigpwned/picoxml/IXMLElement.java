@@ -30,7 +30,9 @@
 package com.sigpwned.picoxml;
 
 
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.StringReader;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Properties;
@@ -501,6 +503,20 @@ public interface IXMLElement
    public String getContent();
 
 
+   /**
+    * Returns a reader which retrieves the #PCDATA content of the element.
+    * Implementations which do not keep their content in memory can return a
+    * reader which retrieves it in chunks.
+    *
+    * @return the reader, or null if the element has no content.
+    */
+   public default Reader getContentReader()
+   {
+      String content = this.getContent();
+      return (content == null) ? null : new StringReader(content);
+   }
+
+
    /**
     * Sets the #PCDATA content. It is an error to call this method with a
     * non-null value if there are child objects.
@@ -0,0 +1,74 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+/**
+ * IXMLLocator tells where in the XML data a parser currently is. A locator
+ * is a live view: its values change as the data is read, so it can be
+ * obtained once and consulted in every callback.
+ *
+ */
+public interface IXMLLocator
+{
+
+   /**
+    * Returns the current system ID.
+    */
+   public String getSystemID();
+
+
+   /**
+    * Returns the current public ID.
+    */
+   public String getPublicID();
+
+
+   /**
+    * Returns the current line number, 0 if it is not known, or
+    * XMLElement.NO_LINE if lines are not tracked.
+    */
+   public int getLineNr();
+
+
+   /**
+    * Returns the current column number, where the first column of a line is
+    * 1, or -1 if columns are not tracked.
+    */
+   public int getColumnNr();
+
+
+   /**
+    * Returns the number of characters read from the current stream, or -1
+    * if character offsets are not tracked.
+    */
+   public long getCharacterOffset();
+
+}
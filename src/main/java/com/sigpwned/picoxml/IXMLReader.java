@@ -55,6 +55,138 @@ public interface IXMLReader
       throws IOException;
 
 
+   /**
+    * Reads characters into an array up to, but not including, the first
+    * character which is one of the delimiters. This is equivalent to calling
+    * <code>read()</code> until a delimiter is read and pushing it back, but
+    * implementations can copy runs of characters at once.
+    *
+    * @param buffer     where to put the characters.
+    * @param offset     the position in the buffer of the first character.
+    * @param length     the maximum number of characters to read.
+    * @param delimiters the characters which end the run.
+    *
+    * @return the number of characters read.
+    *
+    * @throws java.io.IOException
+    *		If no character could be read.
+    */
+   public default int readUntil(char[] buffer,
+                                int    offset,
+                                int    length,
+                                String delimiters)
+      throws IOException
+   {
+      for (int i = 0; i < length; i++) {
+         char ch = this.read();
+
+         if (delimiters.indexOf(ch) >= 0) {
+            this.unread(ch);
+            return i;
+         }
+
+         buffer[offset + i] = ch;
+      }
+
+      return length;
+   }
+
+
+   /**
+    * Reads the characters of a name, i.e. letters, digits and the characters
+    * <code>_:-.</code>, and appends them to a buffer. The first character
+    * which is not part of the name is pushed back.
+    *
+    * @param buffer where to put the characters.
+    *
+    * @throws java.io.IOException
+    *		If no character could be read.
+    */
+   public default void readName(StringBuffer buffer)
+      throws IOException
+   {
+      for (;;) {
+         char ch = this.read();
+
+         if (! XMLUtil.isNameChar(ch)) {
+            this.unread(ch);
+            break;
+         }
+
+         buffer.append(ch);
+      }
+   }
+
+
+   /**
+    * Reads a name and returns its symbol. The first character which is not
+    * part of the name is pushed back.
+    *
+    * @param symbols the symbol table.
+    *
+    * @return the symbol of the name, which may be empty.
+    *
+    * @throws java.io.IOException
+    *		If no character could be read.
+    */
+   public default String readName(XMLSymbolTable symbols)
+      throws IOException
+   {
+      StringBuffer buffer = new StringBuffer();
+      this.readName(buffer);
+      return symbols.getSymbol(buffer.toString());
+   }
+
+
+   /**
+    * Skips spaces, tabs and line ends. The first character which is not
+    * whitespace is pushed back.
+    *
+    * @param buffer where to put the whitespace; a line end is stored as a
+    *               line feed and any other whitespace as a space. If
+    *               null, the whitespace is ignored.
+    *
+    * @throws java.io.IOException
+    *		If no character could be read.
+    */
+   public default void skipWhitespace(StringBuffer buffer)
+      throws IOException
+   {
+      for (;;) {
+         char ch = this.read();
+
+         if ((ch != ' ') && (ch != '\t') && (ch != '\n')) {
+            this.unread(ch);
+            break;
+         }
+
+         if (buffer != null) {
+            buffer.append((ch == '\n') ? '\n' : ' ');
+         }
+      }
+   }
+
+
+   /**
+    * Skips characters up to and including the first occurrence of a literal,
+    * e.g. <code>--&gt;</code> at the end of a comment.
+    *
+    * @param literal the non-empty literal.
+    *
+    * @throws java.io.IOException
+    *		If no character could be read.
+    */
+   public default void skipPast(String literal)
+      throws IOException
+   {
+      int matched = 0;
+
+      while (matched < literal.length()) {
+         matched = XMLUtil.matchLiteral(literal, matched, this.read());
+      }
+   }
+
+
    /**
     * Returns true if the current stream has no more characters left to be
     * read.
@@ -89,7 +221,8 @@ public interface IXMLReader
 
 
    /**
-    * Returns the line number of the data in the current stream.
+    * Returns the line number of the data in the current stream, or
+    * XMLElement.NO_LINE if lines are not tracked.
     */
    public int getLineNr();
 
@@ -174,4 +307,29 @@ public interface IXMLReader
     */
    public String getPublicID();
 
+
+   /**
+    * Returns a locator which tells where in the data the reader currently
+    * is. The locator is a live view, so it can be obtained once and
+    * consulted while the data is read.
+    */
+   public default IXMLLocator getLocator()
+   {
+      return new XMLReaderLocator(this);
+   }
+
+
+   /**
+    * Closes all the streams of the reader. No characters can be read
+    * afterwards.
+    *
+    * @throws java.io.IOException
+    *     if an I/O error occurred
+    */
+   public default void close()
+      throws IOException
+   {
+      // nothing to do
+   }
+
 }
@@ -0,0 +1,73 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+/**
+ * IXMLSkippingBuilder is a builder which can tell the parser to skip
+ * elements it is not interested in. A skipped element is passed over at
+ * scan speed: its attributes and content are not processed, and neither the
+ * builder nor the validator is notified of anything inside it.
+ *
+ * @see com.sigpwned.picoxml.IXMLBuilder
+ *
+ */
+public interface IXMLSkippingBuilder
+   extends IXMLBuilder
+{
+
+   /**
+    * This method is called when a new XML element is encountered, before
+    * its attributes are read and before startElement is called. If it
+    * returns true, the element is skipped up to and including its end tag,
+    * and startElement is not called for it.
+    * <P>
+    * As the attributes have not been read yet, namespaces declared by the
+    * element itself are not taken into account.
+    *
+    * @param name       the name of the element.
+    * @param nsPrefix   the prefix used to identify the namespace. If no
+    *                   namespace has been specified, this parameter is null.
+    * @param nsURI      the URI associated with the namespace by the parent
+    *                   elements. If no namespace has been specified, or no
+    *                   URI is associated with nsPrefix, this parameter is
+    *                   null.
+    *
+    * @return true if the element has to be skipped.
+    *
+    * @throws java.lang.Exception
+    *     If an exception occurred while processing the event.
+    */
+   public boolean skipElement(String name,
+                              String nsPrefix,
+                              String nsURI)
+      throws Exception;
+
+}
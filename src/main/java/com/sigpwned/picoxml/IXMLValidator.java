@@ -161,4 +161,16 @@ public interface IXMLValidator
                            int    lineNr)
       throws Exception;
 
+
+   /**
+    * Returns true if the validator has to be notified of elements,
+    * attributes and PCDATA. While this returns false, the parser may skip
+    * those notifications. The result may only change while the DTD is
+    * parsed.
+    */
+   public default boolean processesElements()
+   {
+      return true;
+   }
+
 }
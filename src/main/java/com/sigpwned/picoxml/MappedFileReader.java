@@ -0,0 +1,250 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ *
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+
+/**
+ * This reader decodes the characters of a file straight from a memory-mapped
+ * view of that file. Files larger than a single window are mapped one window
+ * at a time.
+ *
+ */
+class MappedFileReader
+   extends Reader
+{
+
+   /**
+    * The maximum number of bytes mapped at once.
+    */
+   static final long WINDOW_SIZE = 64L * 1024L * 1024L;
+
+
+   /**
+    * The channel of the file.
+    */
+   private FileChannel channel;
+
+
+   /**
+    * The size of the file.
+    */
+   private long size;
+
+
+   /**
+    * The position in the file of the first byte of the current window.
+    */
+   private long windowStart;
+
+
+   /**
+    * The currently mapped window.
+    */
+   private MappedByteBuffer window;
+
+
+   /**
+    * The decoder.
+    */
+   private CharsetDecoder decoder;
+
+
+   /**
+    * True if the decoder has been told that there is no more input.
+    */
+   private boolean atEndOfData;
+
+
+   /**
+    * Creates the reader and maps the first window of the file.
+    *
+    * @param channel the channel of the file
+    *
+    * @throws java.io.IOException
+    *		if the file could not be mapped
+    */
+   MappedFileReader(FileChannel channel)
+      throws IOException
+   {
+      this.channel = channel;
+      this.size = channel.size();
+      this.windowStart = 0;
+      this.window = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                Math.min(this.size, WINDOW_SIZE));
+      this.atEndOfData = false;
+      this.setCharset(Charset.forName("UTF-8"));
+   }
+
+
+   /**
+    * Cleans up the object when it's destroyed.
+    */
+   protected void finalize()
+      throws Throwable
+   {
+      this.channel = null;
+      this.window = null;
+      this.decoder = null;
+      super.finalize();
+   }
+
+
+   /**
+    * Sets the character set used to decode the file. This method has to be
+    * called before any data has been read.
+    *
+    * @param charset the character set
+    */
+   void setCharset(Charset charset)
+   {
+      this.decoder = charset.newDecoder()
+         .onMalformedInput(CodingErrorAction.REPLACE)
+         .onUnmappableCharacter(CodingErrorAction.REPLACE);
+   }
+
+
+   /**
+    * Returns a byte that has not been decoded yet, without consuming it.
+    *
+    * @param index the index of the byte, relative to the first byte that has
+    *              not been decoded yet
+    *
+    * @return the byte, or -1 if the byte is not available
+    */
+   int peek(int index)
+   {
+      index += this.window.position();
+
+      if (index >= this.window.limit()) {
+         return -1;
+      }
+
+      return this.window.get(index) & 0xFF;
+   }
+
+
+   /**
+    * Skips bytes, e.g. a byte order mark, without decoding them.
+    *
+    * @param count the number of bytes to skip
+    */
+   void skip(int count)
+   {
+      this.window.position(Math.min(this.window.position() + count,
+                                    this.window.limit()));
+   }
+
+
+   /**
+    * Reads a block of data.
+    *
+    * @param buffer where to put the read data
+    * @param offset first position in buffer to put the data
+    * @param size maximum number of chars to read
+    *
+    * @return the number of chars read, or -1 if at EOF
+    *
+    * @throws java.io.IOException
+    *		if an error occurred reading the data
+    */
+   public int read(char[] buffer,
+                   int    offset,
+                   int    size)
+      throws IOException
+   {
+      if (size == 0) {
+         return 0;
+      }
+
+      CharBuffer out = CharBuffer.wrap(buffer, offset, size);
+
+      for (;;) {
+         if (this.atEndOfData) {
+            this.decoder.flush(out);
+            break;
+         }
+
+         boolean lastWindow
+            = (this.windowStart + this.window.limit()) >= this.size;
+         CoderResult result = this.decoder.decode(this.window, out,
+                                                  lastWindow);
+
+         if (result.isOverflow()) {
+            break;
+         }
+
+         if (lastWindow) {
+            this.atEndOfData = true;
+         } else if (out.position() > offset) {
+            break;
+         } else {
+            this.windowStart += this.window.position();
+            this.window
+               = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                                  this.windowStart,
+                                  Math.min(this.size - this.windowStart,
+                                           WINDOW_SIZE));
+         }
+      }
+
+      int charsRead = out.position() - offset;
+
+      if (charsRead == 0) {
+         charsRead = -1;
+      }
+
+      return charsRead;
+   }
+
+
+   /**
+    * Closes the file.
+    *
+    * @throws java.io.IOException
+    *		if an error occurred closing the file
+    */
+   public void close()
+      throws IOException
+   {
+      this.channel.close();
+   }
+
+}
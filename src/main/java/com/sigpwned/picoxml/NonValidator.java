@@ -49,6 +49,13 @@ public class NonValidator
    implements IXMLValidator
 {
 
+   /**
+    * The default values pushed for the elements whose type has no default
+    * values. It is shared by all these elements and is never modified.
+    */
+   private static final Properties NO_DEFAULT_VALUES = new Properties();
+
+
    /**
     * The parameter entity resolver.
     */
@@ -63,11 +70,20 @@ public class NonValidator
 
 
    /**
-    * The stack of elements to be processed.
+    * The stack of elements to be processed. It holds the default values of
+    * the attributes which have not been specified yet; the elements whose
+    * type has no default values share one empty set, which must not be
+    * modified.
     */
    protected Stack currentElements;
 
 
+   /**
+    * The tokenizer that reads characters and parameter entity references.
+    */
+   private XMLTokenizer tokenizer;
+
+
    /**
     * Creates the &quot;validator&quot;.
     */
@@ -76,6 +92,7 @@ public class NonValidator
       this.attributeDefaultValues = new Hashtable();
       this.currentElements = new Stack();
       this.parameterEntityResolver = new XMLEntityResolver();
+      this.tokenizer = new XMLTokenizer();
    }
 
 
@@ -90,6 +107,7 @@ public class NonValidator
       this.attributeDefaultValues = null;
       this.currentElements.clear();
       this.currentElements = null;
+      this.tokenizer = null;
       super.finalize();
    }
 
@@ -138,11 +156,11 @@ public class NonValidator
       int origLevel = reader.getStreamLevel();
 
       for (;;) {
-         String str = XMLUtil.read(reader, '%');
-         char ch = str.charAt(0);
+         int token = this.tokenizer.read(reader, '%');
+         char ch = (char) token;
 
-         if (ch == '%') {
-            XMLUtil.processEntity(str, reader,
+         if (token < 0) {
+            XMLUtil.processEntity(this.tokenizer.getEntityName(), reader,
                                   this.parameterEntityResolver);
             continue;
          } else if (ch == '<') {
@@ -152,7 +170,7 @@ public class NonValidator
          } else {
             XMLUtil.errorInvalidInput(reader.getSystemID(),
                                       reader.getLineNr(),
-                                      str);
+                                      String.valueOf(ch));
          }
 
          do {
@@ -183,18 +201,12 @@ public class NonValidator
                                  IXMLEntityResolver entityResolver)
       throws Exception
    {
-      String str = XMLUtil.read(reader, '%');
-      char ch = str.charAt(0);
-
-      if (ch != '!') {
+      if (this.tokenizer.read(reader, '%') != '!') {
          XMLUtil.skipTag(reader);
          return;
       }
 
-      str = XMLUtil.read(reader, '%');
-      ch = str.charAt(0);
-
-      switch (ch) {
+      switch (this.tokenizer.read(reader, '%')) {
          case '-':
             XMLUtil.skipComment(reader);
             break;
@@ -232,18 +244,12 @@ public class NonValidator
    {
       XMLUtil.skipWhitespace(reader, null);
 
-      String str = XMLUtil.read(reader, '%');
-      char ch = str.charAt(0);
-
-      if (ch != 'I') {
+      if (this.tokenizer.read(reader, '%') != 'I') {
          XMLUtil.skipTag(reader);
          return;
       }
 
-      str = XMLUtil.read(reader, '%');
-      ch = str.charAt(0);
-
-      switch (ch) {
+      switch (this.tokenizer.read(reader, '%')) {
          case 'G':
             this.processIgnoreSection(reader, entityResolver);
             return;
@@ -263,10 +269,7 @@ public class NonValidator
 
       XMLUtil.skipWhitespace(reader, null);
 
-      str = XMLUtil.read(reader, '%');
-      ch = str.charAt(0);
-
-      if (ch != '[') {
+      if (this.tokenizer.read(reader, '%') != '[') {
          XMLUtil.skipTag(reader);
          return;
       }
@@ -309,10 +312,7 @@ public class NonValidator
 
       XMLUtil.skipWhitespace(reader, null);
 
-      String str = XMLUtil.read(reader, '%');
-      char ch = str.charAt(0);
-
-      if (ch != '[') {
+      if (this.tokenizer.read(reader, '%') != '[') {
          XMLUtil.skipTag(reader);
          return;
       }
@@ -341,26 +341,12 @@ public class NonValidator
       }
 
       XMLUtil.skipWhitespace(reader, null);
-      String str = XMLUtil.read(reader, '%');
-      char ch = str.charAt(0);
-      while (ch == '%') {
-         XMLUtil.processEntity(str, reader,
-                               this.parameterEntityResolver);
-         str = XMLUtil.read(reader, '%');
-         ch = str.charAt(0);
-      }
+      char ch = this.readSkippingEntities(reader);
       reader.unread(ch);
       String elementName = XMLUtil.scanIdentifier(reader);
       XMLUtil.skipWhitespace(reader, null);
       
-      str = XMLUtil.read(reader, '%');
-      ch = str.charAt(0);
-      while (ch == '%') {
-         XMLUtil.processEntity(str, reader,
-                               this.parameterEntityResolver);
-         str = XMLUtil.read(reader, '%');
-         ch = str.charAt(0);
-      }
+      ch = this.readSkippingEntities(reader);
 
       Properties props = new Properties();
 
@@ -383,20 +369,12 @@ public class NonValidator
          ch = XMLUtil.readChar(reader, '%');
 
          if (ch == '#') {
-            str = XMLUtil.scanIdentifier(reader);
+            String str = XMLUtil.scanIdentifier(reader);
             XMLUtil.skipWhitespace(reader, null);
 
             if (! str.equals("FIXED")) {
                XMLUtil.skipWhitespace(reader, null);
-
-               str = XMLUtil.read(reader, '%');
-               ch = str.charAt(0);
-               while (ch == '%') {
-                  XMLUtil.processEntity(str, reader,
-                                        this.parameterEntityResolver);
-                  str = XMLUtil.read(reader, '%');
-                  ch = str.charAt(0);
-               }
+               ch = this.readSkippingEntities(reader);
 
                continue;
             }
@@ -405,18 +383,11 @@ public class NonValidator
          }
 
          String value = XMLUtil.scanString(reader, '%',
-                                           this.parameterEntityResolver);
+                                           this.parameterEntityResolver,
+                                           this.tokenizer);
          props.put(attName, value);
          XMLUtil.skipWhitespace(reader, null);
-
-         str = XMLUtil.read(reader, '%');
-         ch = str.charAt(0);
-         while (ch == '%') {
-            XMLUtil.processEntity(str, reader,
-                                  this.parameterEntityResolver);
-            str = XMLUtil.read(reader, '%');
-            ch = str.charAt(0);
-         }
+         ch = this.readSkippingEntities(reader);
       }
 
       if (! props.isEmpty()) {
@@ -425,6 +396,32 @@ public class NonValidator
    }
 
 
+   /**
+    * Reads a character, expanding any parameter entity references that
+    * precede it.
+    *
+    * @param reader the reader to read data from.
+    *
+    * @return the character that has been read.
+    *
+    * @throws java.lang.Exception
+    *     If something went wrong.
+    */
+   private char readSkippingEntities(IXMLReader reader)
+      throws Exception
+   {
+      int token = this.tokenizer.read(reader, '%');
+
+      while (token < 0) {
+         XMLUtil.processEntity(this.tokenizer.getEntityName(), reader,
+                               this.parameterEntityResolver);
+         token = this.tokenizer.read(reader, '%');
+      }
+
+      return (char) token;
+   }
+
+
    /**
     * Processes an ENTITY element.
     *
@@ -468,10 +465,12 @@ public class NonValidator
 
             XMLUtil.skipWhitespace(reader, null);
             publicID = XMLUtil.scanString(reader, '%',
-                                          this.parameterEntityResolver);
+                                          this.parameterEntityResolver,
+                                          this.tokenizer);
             XMLUtil.skipWhitespace(reader, null);
             systemID = XMLUtil.scanString(reader, '%',
-                                          this.parameterEntityResolver);
+                                          this.parameterEntityResolver,
+                                          this.tokenizer);
             XMLUtil.skipWhitespace(reader, null);
             XMLUtil.readChar(reader, '%');
             break;
@@ -484,7 +483,8 @@ public class NonValidator
 
             XMLUtil.skipWhitespace(reader, null);
             systemID = XMLUtil.scanString(reader, '%',
-                                          this.parameterEntityResolver);
+                                          this.parameterEntityResolver,
+                                          this.tokenizer);
             XMLUtil.skipWhitespace(reader, null);
             XMLUtil.readChar(reader, '%');
             break;
@@ -493,7 +493,8 @@ public class NonValidator
          case '\'':
             reader.unread(ch);
             String value = XMLUtil.scanString(reader, '%',
-                                              this.parameterEntityResolver);
+                                              this.parameterEntityResolver,
+                                              this.tokenizer);
             entityResolver.addInternalEntity(key, value);
             XMLUtil.skipWhitespace(reader, null);
             XMLUtil.readChar(reader, '%');
@@ -524,7 +525,7 @@ public class NonValidator
          = (Properties) this.attributeDefaultValues.get(name);
 
       if (attribs == null) {
-         attribs = new Properties();
+         attribs = NO_DEFAULT_VALUES;
       } else {
          attribs = (Properties) attribs.clone();
       }
@@ -607,4 +608,16 @@ public class NonValidator
       // nothing to do
    }
 
+
+   /**
+    * Returns true if the DTD declared default values for attributes. A
+    * subclass is always notified, as it may override the notification
+    * methods.
+    */
+   public boolean processesElements()
+   {
+      return (this.getClass() != NonValidator.class)
+             || (! this.attributeDefaultValues.isEmpty());
+   }
+
 }
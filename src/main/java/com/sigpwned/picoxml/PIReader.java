@@ -106,6 +106,13 @@ class PIReader
       }
 
       while (charsRead < size) {
+         charsRead += this.reader.readUntil(buffer, offset + charsRead,
+                                            size - charsRead, "?");
+
+         if (charsRead == size) {
+            break;
+         }
+
          char ch = this.reader.read();
 
          if (ch == '?') {
@@ -119,7 +126,7 @@ class PIReader
             this.reader.unread(ch2);
          }
 
-         buffer[charsRead] = ch;
+         buffer[offset + charsRead] = ch;
          charsRead++;
       }
 
@@ -140,16 +147,9 @@ class PIReader
    public void close()
       throws IOException
    {
-      while (! this.atEndOfData) {
-         char ch = this.reader.read();
-
-         if (ch == '?') {
-            char ch2 = this.reader.read();
-
-            if (ch2 == '>') {
-               this.atEndOfData = true;
-            }
-         }
+      if (! this.atEndOfData) {
+         this.reader.skipPast("?>");
+         this.atEndOfData = true;
       }
    }
 
@@ -38,6 +38,13 @@ import java.util.Stack;
 /**
  * StdXMLBuilder is a concrete implementation of IXMLBuilder which creates a
  * tree of IXMLElement from an XML data source.
+ * <P>
+ * Text is collected until the next element or processing instruction
+ * starts, or the current element ends. Adjacent PCDATA and CDATA sections
+ * are therefore joined into one PCDATA element, and so is the text on both
+ * sides of a comment, whether or not the <I>addChild</I> method of the
+ * prototype joins adjacent PCDATA elements. If an element contains nothing
+ * but text, the text becomes its content and no PCDATA element is created.
  *
  * @see com.sigpwned.picoxml.XMLElement
  *
@@ -64,6 +71,45 @@ public class StdXMLBuilder
    private IXMLElement prototype;
 
 
+   /**
+    * The symbol table for the full names of elements and attributes which
+    * have a namespace prefix.
+    */
+   private XMLSymbolTable symbols;
+
+
+   /**
+    * The text which has been read since the last element started or ended.
+    * Adjacent PCDATA and CDATA sections are collected here, so an element
+    * which only contains text gets its content without a PCDATA child.
+    */
+   private StringBuffer text;
+
+
+   /**
+    * True if <I>text</I> holds text which has not been added to the tree.
+    */
+   private boolean hasText;
+
+
+   /**
+    * The system ID of the first part of the pending text.
+    */
+   private String textSystemID;
+
+
+   /**
+    * The line number of the first part of the pending text.
+    */
+   private int textLineNr;
+
+
+   /**
+    * The buffer used to read PCDATA.
+    */
+   private char[] chars;
+
+
    /**
     * Creates the builder.
     */
@@ -83,6 +129,12 @@ public class StdXMLBuilder
       this.stack = null;
       this.root = null;
       this.prototype = prototype;
+      this.symbols = new XMLSymbolTable();
+      this.text = new StringBuffer();
+      this.hasText = false;
+      this.textSystemID = null;
+      this.textLineNr = 0;
+      this.chars = new char[2048];
    }
 
 
@@ -93,7 +145,11 @@ public class StdXMLBuilder
       throws Throwable
    {
       this.prototype = null;
+      this.symbols = null;
       this.root = null;
+      this.text = null;
+      this.textSystemID = null;
+      this.chars = null;
       this.stack.clear();
       this.stack = null;
       super.finalize();
@@ -111,12 +167,14 @@ public class StdXMLBuilder
    {
       this.stack = new Stack();
       this.root = null;
+      this.clearText();
    }
 
 
    /**
     * This method is called when a processing instruction is encountered.
-    * PIs with target "xml" are handled by the parser.
+    * PIs with target "xml" are handled by the parser. The PI itself is not
+    * added to the tree, but it ends the text in front of it.
     *
     * @param target the PI target.
     * @param reader to read the data from the PI.
@@ -124,7 +182,7 @@ public class StdXMLBuilder
    public void newProcessingInstruction(String target,
                                         Reader reader)
    {
-      // nothing to do
+      this.flushText();
    }
 
 
@@ -151,9 +209,10 @@ public class StdXMLBuilder
       String fullName = name;
 
       if (nsPrefix != null) {
-         fullName = nsPrefix + ':' + name;
+         fullName = this.symbols.getSymbol(nsPrefix + ':' + name);
       }
 
+      this.flushText();
       IXMLElement elt = this.prototype.createElement(fullName, nsURI,
                                                      systemID, lineNr);
 
@@ -206,13 +265,27 @@ public class StdXMLBuilder
                           String nsPrefix,
                           String nsURI)
    {
-      IXMLElement elt = (IXMLElement) this.stack.pop();
+      IXMLElement elt = (IXMLElement) this.stack.peek();
+
+      if (this.hasText && (elt.getChildrenCount() == 0)) {
+         elt.setContent(this.text.toString());
+         this.clearText();
+      } else {
+         this.flushText();
+      }
+
+      this.stack.pop();
 
       if (elt.getChildrenCount() == 1) {
          IXMLElement child = elt.getChildAtIndex(0);
 
          if (child.getName() == null) {
-            elt.setContent(child.getContent());
+            if ((elt instanceof XMLElement) && (child instanceof XMLElement)) {
+               ((XMLElement) elt).takeContent((XMLElement) child);
+            } else {
+               elt.setContent(child.getContent());
+            }
+
             elt.removeChildAtIndex(0);
          }
       }
@@ -246,7 +319,7 @@ public class StdXMLBuilder
       String fullName = key;
 
       if (nsPrefix != null) {
-         fullName = nsPrefix + ':' + key;
+         fullName = this.symbols.getSymbol(nsPrefix + ':' + key);
       }
 
       IXMLElement top = (IXMLElement) this.stack.peek();
@@ -281,21 +354,13 @@ public class StdXMLBuilder
                          String systemID,
                          int    lineNr)
    {
-      int bufSize = 2048;
-      int sizeRead = 0;
-      StringBuffer str = new StringBuffer(bufSize);
-      char[] buf = new char[bufSize];
+      this.startText(systemID, lineNr);
 
       for (;;) {
-         if (sizeRead >= bufSize) {
-            bufSize *= 2;
-            str.ensureCapacity(bufSize);
-         }
-
          int size;
 
          try {
-            size = reader.read(buf);
+            size = reader.read(this.chars);
          } catch (IOException e) {
             break;
          }
@@ -304,17 +369,150 @@ public class StdXMLBuilder
             break;
          }
 
-         str.append(buf, 0, size);
-         sizeRead += size;
+         this.text.append(this.chars, 0, size);
       }
+   }
 
-      IXMLElement elt = this.prototype.createElement(null, systemID, lineNr);
-      elt.setContent(str.toString());
+
+   /**
+    * Adds text to the element which is currently being built. The text is
+    * joined with any text next to it. If the element turns out to contain
+    * only text, the text becomes its content; otherwise it is added as a
+    * PCDATA element when the next element starts or the current one ends.
+    *
+    * @param content  the text.
+    * @param systemID the system ID of the XML data source.
+    * @param lineNr   the line in the source where the text starts.
+    */
+   protected void addText(String content,
+                          String systemID,
+                          int    lineNr)
+   {
+      this.startText(systemID, lineNr);
+      this.text.append(content);
+   }
+
+
+   /**
+    * Adds text to the element which is currently being built, in the same
+    * way as <I>addText(String, String, int)</I>.
+    *
+    * @param buffer   the array which contains the text.
+    * @param offset   the position in the array of the first character.
+    * @param length   the number of characters.
+    * @param systemID the system ID of the XML data source.
+    * @param lineNr   the line in the source where the text starts.
+    */
+   protected void addText(char[] buffer,
+                          int    offset,
+                          int    length,
+                          String systemID,
+                          int    lineNr)
+   {
+      this.startText(systemID, lineNr);
+      this.text.append(buffer, offset, length);
+   }
+
+
+   /**
+    * Returns the number of characters of the text which has not been added
+    * to the tree yet.
+    *
+    * @return the number of characters.
+    */
+   protected int getTextLength()
+   {
+      return this.text.length();
+   }
+
+
+   /**
+    * Removes the text which has not been added to the tree yet.
+    *
+    * @return the text, or null if there is none.
+    */
+   protected String takeText()
+   {
+      if (! this.hasText) {
+         return null;
+      }
+
+      String result = this.text.toString();
+      this.clearText();
+      return result;
+   }
+
+
+   /**
+    * Records where the pending text starts, unless some text is already
+    * pending.
+    *
+    * @param systemID the system ID of the XML data source.
+    * @param lineNr   the line in the source where the text starts.
+    */
+   private void startText(String systemID,
+                          int    lineNr)
+   {
+      if (! this.hasText) {
+         this.hasText = true;
+         this.textSystemID = systemID;
+         this.textLineNr = lineNr;
+      }
+   }
+
+
+   /**
+    * Adds the pending text, if any, as a PCDATA element to the element which
+    * is currently being built.
+    */
+   private void flushText()
+   {
+      if (! this.hasText) {
+         return;
+      }
+
+      IXMLElement elt = this.prototype.createElement(null, this.textSystemID,
+                                                     this.textLineNr);
+      elt.setContent(this.text.toString());
 
       if (! this.stack.empty()) {
          IXMLElement top = (IXMLElement) this.stack.peek();
          top.addChild(elt);
       }
+
+      this.clearText();
+   }
+
+
+   /**
+    * Discards the pending text. A buffer which has grown large is dropped
+    * so that one big text does not stay allocated for the whole document.
+    */
+   private void clearText()
+   {
+      if (this.text.capacity() > 65536) {
+         this.text = new StringBuffer();
+      } else {
+         this.text.setLength(0);
+      }
+
+      this.hasText = false;
+      this.textSystemID = null;
+   }
+
+
+   /**
+    * Returns the element which is currently being built.
+    *
+    * @return the current element, or null if no element is being built.
+    */
+   protected IXMLElement getCurrentElement()
+   {
+      if ((this.stack == null) || this.stack.empty()) {
+         return null;
+      }
+
+      return (IXMLElement) this.stack.peek();
    }
 
 
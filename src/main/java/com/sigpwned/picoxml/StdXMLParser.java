@@ -66,6 +66,86 @@ public class StdXMLParser implements IXMLParser {
   private IXMLValidator validator;
 
 
+  /**
+   * True if the validator has to be notified of elements, attributes and PCDATA.
+   */
+  private boolean validatingElements;
+
+
+  /**
+   * The builder if it can skip elements, or null.
+   */
+  private IXMLSkippingBuilder skippingBuilder;
+
+
+  /**
+   * Where to put the characters of skipped elements, or null if no element has been skipped yet.
+   */
+  private char[] skipBuffer;
+
+
+  /**
+   * The builder if it receives text as character slices, or null.
+   */
+  private IXMLCharacterBuilder characterBuilder;
+
+
+  /**
+   * Where to put the characters of text for the character builder, or null if no text has been
+   * delivered yet.
+   */
+  private char[] textBuffer;
+
+
+  /**
+   * The maximum number of characters passed to the character builder in one call, or 0 if the
+   * whole text is passed in one call.
+   */
+  private int textChunkSize;
+
+
+  /**
+   * The tokenizer that reads characters and references from the reader.
+   */
+  private XMLTokenizer tokenizer;
+
+
+  /**
+   * The symbol table for element and attribute names.
+   */
+  private XMLSymbolTable symbols;
+
+
+  /**
+   * The attributes of the element being processed.
+   */
+  private XMLAttributeBuffer attributes;
+
+
+  /**
+   * The attributes which the validator adds to the element being processed.
+   */
+  private Properties extraAttributes;
+
+
+  /**
+   * The namespace prefixes which are in scope.
+   */
+  private XMLNamespaceContext namespaces;
+
+
+  /**
+   * The elements which have been started but not ended yet.
+   */
+  private XMLElementStack elements;
+
+
+  /**
+   * The whitespace and replacement text read before the text of an element.
+   */
+  private StringBuffer text;
+
+
   /**
    * Creates a new parser.
    */
@@ -74,6 +154,14 @@ public class StdXMLParser implements IXMLParser {
     this.validator = null;
     this.reader = null;
     this.entityResolver = new XMLEntityResolver();
+    this.tokenizer = new XMLTokenizer();
+    this.symbols = new XMLSymbolTable();
+    this.attributes = new XMLAttributeBuffer();
+    this.extraAttributes = new Properties();
+    this.namespaces = new XMLNamespaceContext();
+    this.elements = new XMLElementStack();
+    this.text = new StringBuffer(16);
+    this.textChunkSize = 0;
   }
 
 
@@ -86,6 +174,17 @@ public class StdXMLParser implements IXMLParser {
     this.reader = null;
     this.entityResolver = null;
     this.validator = null;
+    this.skippingBuilder = null;
+    this.skipBuffer = null;
+    this.characterBuilder = null;
+    this.textBuffer = null;
+    this.tokenizer = null;
+    this.symbols = null;
+    this.attributes = null;
+    this.extraAttributes = null;
+    this.namespaces = null;
+    this.elements = null;
+    this.text = null;
     super.finalize();
   }
 
@@ -112,6 +211,68 @@ public class StdXMLParser implements IXMLParser {
   }
 
 
+  /**
+   * Sets the symbol table which maps element and attribute names to
+   * canonical strings. A table can be shared by parsers which are not used
+   * at the same time.
+   *
+   * @param symbols the non-null symbol table
+   */
+  public void setSymbolTable(XMLSymbolTable symbols) {
+    this.symbols = symbols;
+  }
+
+
+  /**
+   * Returns the symbol table which maps element and attribute names to
+   * canonical strings.
+   *
+   * @return the symbol table
+   */
+  public XMLSymbolTable getSymbolTable() {
+    return this.symbols;
+  }
+
+
+  /**
+   * Sets the maximum number of characters which are passed to a character builder in one call.
+   * Longer text is passed in several consecutive calls, so it never has to be held in memory as a
+   * whole. A chunk can be slightly longer if it ends with the replacement text of an entity.
+   *
+   * @param size the chunk size, or 0 to pass the whole text in one call
+   *
+   * @see com.sigpwned.picoxml.IXMLCharacterBuilder
+   */
+  public void setTextChunkSize(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Invalid chunk size: " + size);
+    }
+
+    this.textChunkSize = size;
+  }
+
+
+  /**
+   * Returns the maximum number of characters which are passed to a character builder in one call.
+   *
+   * @return the chunk size, or 0 if the whole text is passed in one call
+   */
+  public int getTextChunkSize() {
+    return this.textChunkSize;
+  }
+
+
+  /**
+   * Returns the namespace context, which holds the namespace prefixes that are in scope at the
+   * current position of the parser. Builders may consult it while they receive events.
+   *
+   * @return the namespace context
+   */
+  public XMLNamespaceContext getNamespaceContext() {
+    return this.namespaces;
+  }
+
+
   /**
    * Sets the validator that validates the XML data.
    *
@@ -179,7 +340,20 @@ public class StdXMLParser implements IXMLParser {
 
 
   /**
-   * Parses the data and lets the builder create the logical data structure.
+   * Returns the current position of the parser in the input. The locator is a live view of the
+   * reader, so builders can keep it for the duration of the parse.
+   *
+   * @return the locator
+   */
+  public IXMLLocator getLocator() {
+    return this.reader.getLocator();
+  }
+
+
+  /**
+   * Parses the data and lets the builder create the logical data structure. If the builder or the
+   * validator throws an XMLStopParsingException, the reader is closed and the result which has been
+   * built so far is returned.
    *
    * @return the logical structure built by the builder
    *
@@ -188,8 +362,21 @@ public class StdXMLParser implements IXMLParser {
   @Override
   public Object parse() throws XMLException {
     try {
-      this.builder.startBuilding(this.reader.getSystemID(), this.reader.getLineNr());
-      this.scanData();
+      this.namespaces.reset();
+      this.elements.clear();
+      this.validatingElements = this.validator.processesElements();
+      this.skippingBuilder = (this.builder instanceof IXMLSkippingBuilder)
+          ? (IXMLSkippingBuilder) this.builder : null;
+      this.characterBuilder = (this.builder instanceof IXMLCharacterBuilder)
+          ? (IXMLCharacterBuilder) this.builder : null;
+
+      try {
+        this.builder.startBuilding(this.reader.getSystemID(), this.reader.getLineNr());
+        this.scanData();
+      } catch (XMLStopParsingException e) {
+        this.reader.close();
+      }
+
       return this.builder.getResult();
     } catch (XMLException e) {
       throw e;
@@ -206,18 +393,17 @@ public class StdXMLParser implements IXMLParser {
    */
   protected void scanData() throws Exception {
     while ((!this.reader.atEOF()) && (this.builder.getResult() == null)) {
-      String str = XMLUtil.read(this.reader, '&');
-      char ch = str.charAt(0);
-      if (ch == '&') {
-        XMLUtil.processEntity(str, this.reader, this.entityResolver);
+      int token = this.tokenizer.read(this.reader, '&');
+      if (token < 0) {
+        XMLUtil.processEntity(this.tokenizer.getEntityName(), this.reader, this.entityResolver);
         continue;
       }
 
+      char ch = (char) token;
+
       switch (ch) {
         case '<':
-          this.scanSomeTag(false, // don't allow CDATA
-              null, // no default namespace
-              new Properties());
+          this.scanSomeTag(false); // don't allow CDATA
           break;
 
         case ' ':
@@ -239,20 +425,19 @@ public class StdXMLParser implements IXMLParser {
    * Scans an XML tag.
    *
    * @param allowCDATA true if CDATA sections are allowed at this point
-   * @param defaultNamespace the default namespace URI (or null)
-   * @param namespaces list of defined namespaces
    *
    * @throws java.lang.Exception if something went wrong
    */
-  protected void scanSomeTag(boolean allowCDATA, String defaultNamespace, Properties namespaces)
-      throws Exception {
-    String str = XMLUtil.read(this.reader, '&');
-    char ch = str.charAt(0);
+  protected void scanSomeTag(boolean allowCDATA) throws Exception {
+    int token = this.tokenizer.read(this.reader, '&');
 
-    if (ch == '&') {
-      XMLUtil.errorUnexpectedEntity(reader.getSystemID(), reader.getLineNr(), str);
+    if (token < 0) {
+      XMLUtil.errorUnexpectedEntity(reader.getSystemID(), reader.getLineNr(),
+          this.tokenizer.getReference());
     }
 
+    char ch = (char) token;
+
     switch (ch) {
       case '?':
         this.processPI();
@@ -264,7 +449,50 @@ public class StdXMLParser implements IXMLParser {
 
       default:
         this.reader.unread(ch);
-        this.processElement(defaultNamespace, namespaces);
+        this.processElement();
+    }
+  }
+
+
+  /**
+   * @deprecated As of PicoXML, replaced by {@link #scanSomeTag(boolean)}, which takes the
+   *             namespaces from the namespace context. This method is no longer called by the
+   *             parser, so overriding it has no effect. Scans an XML tag.
+   *
+   * @param allowCDATA true if CDATA sections are allowed at this point
+   * @param defaultNamespace the default namespace URI (or null)
+   * @param namespaces list of defined namespaces
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  @Deprecated
+  protected void scanSomeTag(boolean allowCDATA, String defaultNamespace, Properties namespaces)
+      throws Exception {
+    this.pushNamespaces(defaultNamespace, namespaces);
+    this.scanSomeTag(allowCDATA);
+    this.namespaces.popContext();
+  }
+
+
+  /**
+   * Opens a context of the namespace context in which the namespaces passed to one of the
+   * deprecated methods are bound.
+   *
+   * @param defaultNamespace the default namespace URI (or null)
+   * @param namespaces list of defined namespaces
+   */
+  private void pushNamespaces(String defaultNamespace, Properties namespaces) {
+    this.namespaces.pushContext();
+
+    if (defaultNamespace != null) {
+      this.namespaces.declarePrefix(null, defaultNamespace);
+    }
+
+    Enumeration iter = namespaces.propertyNames();
+
+    while (iter.hasMoreElements()) {
+      String prefix = (String) iter.nextElement();
+      this.namespaces.declarePrefix(prefix, namespaces.getProperty(prefix));
     }
   }
 
@@ -296,13 +524,15 @@ public class StdXMLParser implements IXMLParser {
    * @throws java.lang.Exception if something went wrong
    */
   protected void processSpecialTag(boolean allowCDATA) throws Exception {
-    String str = XMLUtil.read(this.reader, '&');
-    char ch = str.charAt(0);
+    int token = this.tokenizer.read(this.reader, '&');
 
-    if (ch == '&') {
-      XMLUtil.errorUnexpectedEntity(reader.getSystemID(), reader.getLineNr(), str);
+    if (token < 0) {
+      XMLUtil.errorUnexpectedEntity(reader.getSystemID(), reader.getLineNr(),
+          this.tokenizer.getReference());
     }
 
+    char ch = (char) token;
+
     switch (ch) {
       case '[':
         if (allowCDATA) {
@@ -334,13 +564,117 @@ public class StdXMLParser implements IXMLParser {
       XMLUtil.errorExpectedInput(reader.getSystemID(), reader.getLineNr(), "<![[CDATA[");
     }
 
-    this.validator.PCDataAdded(this.reader.getSystemID(), this.reader.getLineNr());
+    if (this.validatingElements) {
+      this.validator.PCDataAdded(this.reader.getSystemID(), this.reader.getLineNr());
+    }
+
+    if (this.characterBuilder != null) {
+      this.scanCDATA(this.reader.getSystemID(), this.reader.getLineNr());
+      return;
+    }
+
     Reader reader = new CDATAReader(this.reader);
     this.builder.addPCData(reader, this.reader.getSystemID(), this.reader.getLineNr());
     reader.close();
   }
 
 
+  /**
+   * Reads the content of a CDATA section and passes it to the character builder. The leading
+   * &lt;![CDATA[ has already been read; the trailing ]]&gt; is read but not passed.
+   *
+   * @param systemID the system ID of the XML data source
+   * @param lineNr the line in the source where the section starts
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void scanCDATA(String systemID, int lineNr) throws Exception {
+    int length = 0;
+    boolean chunked = false;
+    this.ensureTextCapacity(0);
+
+    for (;;) {
+      if ((this.textChunkSize > 0) && (length >= this.textChunkSize)) {
+        this.characterBuilder.addCharacters(this.textBuffer, 0, length, systemID, lineNr);
+        length = 0;
+        chunked = true;
+      }
+
+      int limit = this.getTextLimit();
+      length += this.reader.readUntil(this.textBuffer, length, limit - length, "]");
+
+      if (length == limit) {
+        this.ensureTextCapacity(length + 1);
+        continue;
+      }
+
+      this.reader.read(); // the ] which ended the run
+      int brackets = 1;
+      char ch = this.reader.read();
+
+      while (ch == ']') {
+        brackets++;
+        ch = this.reader.read();
+      }
+
+      boolean end = (ch == '>') && (brackets >= 2);
+
+      if (end) {
+        brackets -= 2;
+      }
+
+      this.ensureTextCapacity(length + brackets + 1);
+
+      for (int i = 0; i < brackets; i++) {
+        this.textBuffer[length++] = ']';
+      }
+
+      if (end) {
+        break;
+      }
+
+      this.textBuffer[length++] = ch;
+    }
+
+    if ((length > 0) || (!chunked)) {
+      this.characterBuilder.addCharacters(this.textBuffer, 0, length, systemID, lineNr);
+    }
+  }
+
+
+  /**
+   * Returns the number of characters which can be put in the text buffer before they have to be
+   * passed to the character builder or the buffer has to grow.
+   *
+   * @return the limit
+   */
+  private int getTextLimit() {
+    int limit = this.textBuffer.length;
+
+    if ((this.textChunkSize > 0) && (this.textChunkSize < limit)) {
+      limit = this.textChunkSize;
+    }
+
+    return limit;
+  }
+
+
+  /**
+   * Makes sure the text buffer can hold a number of characters, keeping its content.
+   *
+   * @param size the number of characters
+   */
+  private void ensureTextCapacity(int size) {
+    if (this.textBuffer == null) {
+      this.textBuffer = new char[Math.max(size, 1024)];
+    } else if (size > this.textBuffer.length) {
+      char[] buffer = new char[Math.max(size, this.textBuffer.length * 2)];
+      System.arraycopy(this.textBuffer, 0, buffer, 0, this.textBuffer.length);
+      this.textBuffer = buffer;
+    }
+  }
+
+
   /**
    * Processes a document type declaration.
    *
@@ -371,6 +705,7 @@ public class StdXMLParser implements IXMLParser {
 
     if (ch == '[') {
       this.validator.parseDTD(publicID.toString(), this.reader, this.entityResolver, false);
+      this.validatingElements = this.validator.processesElements();
       XMLUtil.skipWhitespace(this.reader, null);
       ch = this.reader.read();
     }
@@ -385,35 +720,85 @@ public class StdXMLParser implements IXMLParser {
       this.reader.setSystemID(systemID);
       this.reader.setPublicID(publicID.toString());
       this.validator.parseDTD(publicID.toString(), this.reader, this.entityResolver, true);
+      this.validatingElements = this.validator.processesElements();
     }
   }
 
 
   /**
-   * Processes a regular element.
+   * Processes a regular element. The namespaces declared by the element are bound in a new
+   * context of the namespace context, which is closed when the element ends. Nested elements are
+   * kept on a stack instead of being processed recursively, so there is no limit to the depth of
+   * the data.
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  protected void processElement() throws Exception {
+    int depth = this.elements.size();
+    this.processStartTag();
+
+    while (this.elements.size() > depth) {
+      this.processContent();
+    }
+  }
+
+
+  /**
+   * @deprecated As of PicoXML, replaced by {@link #processElement()}, which takes the namespaces
+   *             from the namespace context. This method is no longer called by the parser, so
+   *             overriding it has no effect. Processes a regular element.
    *
    * @param defaultNamespace the default namespace URI (or null)
    * @param namespaces list of defined namespaces
    *
    * @throws java.lang.Exception if something went wrong
    */
+  @Deprecated
   protected void processElement(String defaultNamespace, Properties namespaces) throws Exception {
-    String fullName = XMLUtil.scanIdentifier(this.reader);
+    this.pushNamespaces(defaultNamespace, namespaces);
+    this.processElement();
+    this.namespaces.popContext();
+  }
+
+
+  /**
+   * Processes a start tag. Unless the tag is empty or the builder skips the element, the element is
+   * pushed on the stack of open elements.
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void processStartTag() throws Exception {
+    String fullName = XMLUtil.scanIdentifier(this.reader, this.symbols);
     String name = fullName;
     XMLUtil.skipWhitespace(this.reader, null);
     String prefix = null;
     int colonIndex = name.indexOf(':');
 
     if (colonIndex > 0) {
-      prefix = name.substring(0, colonIndex);
-      name = name.substring(colonIndex + 1);
+      prefix = this.symbols.getSymbol(fullName, 0, colonIndex);
+      name = this.symbols.getSymbol(fullName, colonIndex + 1,
+          fullName.length() - colonIndex - 1);
+    }
+
+    if ((this.skippingBuilder != null)
+        && this.skippingBuilder.skipElement(name, prefix, this.namespaces.getNamespaceURI(prefix))) {
+      if (this.skipBuffer == null) {
+        this.skipBuffer = new char[1024];
+      }
+
+      XMLUtil.skipElement(this.reader, this.skipBuffer);
+      return;
     }
 
-    Vector attrNames = new Vector();
-    Vector attrValues = new Vector();
-    Vector attrTypes = new Vector();
+    XMLAttributeBuffer attributes = this.attributes;
+    attributes.clear();
+
+    boolean validating = this.validatingElements;
+
+    if (validating) {
+      this.validator.elementStarted(fullName, this.reader.getSystemID(), this.reader.getLineNr());
+    }
 
-    this.validator.elementStarted(fullName, this.reader.getSystemID(), this.reader.getLineNr());
     char ch;
 
     for (;;) {
@@ -424,149 +809,323 @@ public class StdXMLParser implements IXMLParser {
       }
 
       this.reader.unread(ch);
-      this.processAttribute(attrNames, attrValues, attrTypes);
+      this.processAttribute();
       XMLUtil.skipWhitespace(this.reader, null);
     }
 
-    Properties extraAttributes = new Properties();
-    this.validator.elementAttributesProcessed(fullName, extraAttributes, this.reader.getSystemID(),
-        this.reader.getLineNr());
-    Enumeration iter = extraAttributes.keys();
+    if (validating) {
+      Properties extraAttributes = this.extraAttributes;
+      this.validator.elementAttributesProcessed(fullName, extraAttributes,
+          this.reader.getSystemID(), this.reader.getLineNr());
 
-    while (iter.hasMoreElements()) {
-      String key = (String) iter.nextElement();
-      String value = extraAttributes.getProperty(key);
-      attrNames.addElement(key);
-      attrValues.addElement(value);
-      attrTypes.addElement("CDATA");
-    }
-
-    for (int i = 0; i < attrNames.size(); i++) {
-      String key = (String) attrNames.elementAt(i);
-      String value = (String) attrValues.elementAt(i);
-      String type = (String) attrTypes.elementAt(i);
-
-      if (key.equals("xmlns")) {
-        defaultNamespace = value;
-      } else if (key.startsWith("xmlns:")) {
-        namespaces.put(key.substring(6), value);
+      if (!extraAttributes.isEmpty()) {
+        Enumeration iter = extraAttributes.keys();
+
+        while (iter.hasMoreElements()) {
+          String key = (String) iter.nextElement();
+          attributes.add(key, extraAttributes.getProperty(key));
+        }
+
+        extraAttributes.clear();
       }
     }
 
-    if (prefix == null) {
-      this.builder.startElement(name, prefix, defaultNamespace, this.reader.getSystemID(),
-          this.reader.getLineNr());
-    } else {
-      this.builder.startElement(name, prefix, namespaces.getProperty(prefix),
-          this.reader.getSystemID(), this.reader.getLineNr());
+    XMLNamespaceContext namespaces = this.namespaces;
+    namespaces.pushContext();
+
+    if (attributes.hasReserved()) {
+      for (int i = 0; i < attributes.size(); i++) {
+        if (!attributes.isReserved(i)) {
+          continue;
+        }
+
+        String key = attributes.getName(i);
+        String value = attributes.getValue(i);
+
+        if (key.equals("xmlns")) {
+          namespaces.declarePrefix(null, value);
+        } else if (key.startsWith("xmlns:")) {
+          namespaces.declarePrefix(this.symbols.getSymbol(key, 6, key.length() - 6), value);
+        }
+      }
     }
 
-    for (int i = 0; i < attrNames.size(); i++) {
-      String key = (String) attrNames.elementAt(i);
+    String namespace = namespaces.getNamespaceURI(prefix);
 
-      if (key.startsWith("xmlns")) {
+    this.builder.startElement(name, prefix, namespace, this.reader.getSystemID(),
+        this.reader.getLineNr());
+
+    for (int i = 0; i < attributes.size(); i++) {
+      if (attributes.isReserved(i)) {
         continue;
       }
 
-      String value = (String) attrValues.elementAt(i);
-      String type = (String) attrTypes.elementAt(i);
+      String key = attributes.getName(i);
+      String value = attributes.getValue(i);
       colonIndex = key.indexOf(':');
 
       if (colonIndex > 0) {
-        String attPrefix = key.substring(0, colonIndex);
-        key = key.substring(colonIndex + 1);
-        this.builder.addAttribute(key, attPrefix, namespaces.getProperty(attPrefix), value, type);
+        String attPrefix = this.symbols.getSymbol(key, 0, colonIndex);
+        key = this.symbols.getSymbol(key, colonIndex + 1, key.length() - colonIndex - 1);
+        this.builder.addAttribute(key, attPrefix, namespaces.getNamespaceURI(attPrefix), value,
+            "CDATA");
       } else {
-        this.builder.addAttribute(key, null, null, value, type);
+        this.builder.addAttribute(key, null, null, value, "CDATA");
       }
     }
 
-    if (prefix == null) {
-      this.builder.elementAttributesProcessed(name, prefix, defaultNamespace);
-    } else {
-      this.builder.elementAttributesProcessed(name, prefix, namespaces.getProperty(prefix));
-    }
+    attributes.clear();
+
+    this.builder.elementAttributesProcessed(name, prefix, namespace);
 
     if (ch == '/') {
       if (this.reader.read() != '>') {
         XMLUtil.errorExpectedInput(reader.getSystemID(), reader.getLineNr(), "`>'");
       }
 
-      this.validator.elementEnded(name, this.reader.getSystemID(), this.reader.getLineNr());
+      if (validating) {
+        this.validator.elementEnded(name, this.reader.getSystemID(), this.reader.getLineNr());
+      }
+
+      this.builder.endElement(name, prefix, namespace);
+      namespaces.popContext();
+    } else {
+      this.elements.push(fullName, name, prefix, namespace);
+    }
+  }
 
-      if (prefix == null) {
-        this.builder.endElement(name, prefix, defaultNamespace);
+
+  /**
+   * Processes the next part of the content of the innermost open element, which is either some
+   * text or a tag. Whitespace which is directly followed by a tag, such as indentation, is dropped
+   * before the builder or the validator is notified, so no PCDATA element is created for it.
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void processContent() throws Exception {
+    StringBuffer buffer = this.text;
+    buffer.setLength(0);
+    int token;
+    String literal;
+
+    for (;;) {
+      XMLUtil.skipWhitespace(this.reader, buffer);
+      token = this.tokenizer.read(this.reader, '&');
+      literal = null;
+
+      if (token == XMLTokenizer.ENTITY_REFERENCE) {
+        String entity = this.tokenizer.getEntityName();
+        literal = XMLUtil.getLiteralEntity(entity, this.entityResolver);
+
+        // leading whitespace of the replacement text is handled like
+        // whitespace in the data, so such entities are read as a stream
+        if ((literal != null) && (literal.length() > 0)
+            && (" \t\n".indexOf(literal.charAt(0)) < 0)) {
+          break;
+        } else if ((literal == null) || (literal.length() > 0)) {
+          XMLUtil.processEntity(entity, this.reader, this.entityResolver);
+        }
+      } else {
+        break;
+      }
+    }
+
+    if (token == '<') {
+      this.processMarkup();
+    } else {
+      if (literal != null) {
+        buffer.append(literal);
+      } else if (token == XMLTokenizer.CHARACTER_REFERENCE) {
+        buffer.append(this.tokenizer.getCharacter());
       } else {
-        this.builder.endElement(name, prefix, namespaces.getProperty(prefix));
+        this.reader.unread((char) token);
       }
 
+      this.processText(buffer);
+    }
+  }
+
+
+  /**
+   * Processes a tag in the content of an element. The leading &lt; has already been read.
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void processMarkup() throws Exception {
+    int token = this.tokenizer.read(this.reader, '&');
+
+    if (token < 0) {
+      XMLUtil.errorUnexpectedEntity(reader.getSystemID(), reader.getLineNr(),
+          this.tokenizer.getReference());
+    }
+
+    switch (token) {
+      case '/':
+        this.processEndTag();
+        break;
+
+      case '?':
+        this.processPI();
+        break;
+
+      case '!':
+        this.processSpecialTag(true); // CDATA allowed
+        break;
+
+      default:
+        this.reader.unread((char) token);
+        this.processStartTag();
+    }
+  }
+
+
+  /**
+   * Processes an end tag and pops the innermost element from the stack of open elements. The
+   * leading &lt;/ has already been read.
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void processEndTag() throws Exception {
+    XMLElementStack elements = this.elements;
+    String fullName = elements.getFullName();
+    String name = elements.getName();
+    XMLUtil.skipWhitespace(this.reader, null);
+    String str = XMLUtil.scanIdentifier(this.reader, this.symbols);
+
+    // symbols are only canonical while the table is not full
+    if ((str != fullName) && !str.equals(fullName)) {
+      XMLUtil.errorWrongClosingTag(reader.getSystemID(), reader.getLineNr(), name, str);
+    }
+
+    XMLUtil.skipWhitespace(this.reader, null);
+
+    if (this.reader.read() != '>') {
+      XMLUtil.errorClosingTagNotEmpty(reader.getSystemID(), reader.getLineNr());
+    }
+
+    if (this.validatingElements) {
+      this.validator.elementEnded(fullName, this.reader.getSystemID(), this.reader.getLineNr());
+    }
+
+    this.builder.endElement(name, elements.getPrefix(), elements.getNamespace());
+    this.namespaces.popContext();
+    elements.pop();
+  }
+
+
+  /**
+   * Processes text in the content of an element.
+   *
+   * @param buffer data which has already been read
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void processText(StringBuffer buffer) throws Exception {
+    if (this.validatingElements) {
+      this.validator.PCDataAdded(this.reader.getSystemID(), this.reader.getLineNr());
+    }
+
+    if (this.characterBuilder != null) {
+      this.scanText(buffer, this.reader.getSystemID(), this.reader.getLineNr());
       return;
     }
 
-    StringBuffer buffer = new StringBuffer(16);
+    Reader r = new ContentReader(this.reader, this.entityResolver, this.tokenizer,
+        buffer.toString());
+    this.builder.addPCData(r, this.reader.getSystemID(), this.reader.getLineNr());
+    r.close();
+  }
+
+
+  /**
+   * Reads text in the content of an element, resolving references, up to the next tag and passes
+   * it to the character builder. The &lt; of the tag is pushed back.
+   *
+   * @param buffer data which has already been read
+   * @param systemID the system ID of the XML data source
+   * @param lineNr the line in the source where the text starts
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void scanText(StringBuffer buffer, String systemID, int lineNr) throws Exception {
+    int length = buffer.length();
+    boolean chunked = false;
+    this.ensureTextCapacity(length + 1);
+    buffer.getChars(0, length, this.textBuffer, 0);
 
     for (;;) {
-      buffer.setLength(0);
-      String str;
+      if ((this.textChunkSize > 0) && (length >= this.textChunkSize)) {
+        this.characterBuilder.addCharacters(this.textBuffer, 0, length, systemID, lineNr);
+        length = 0;
+        chunked = true;
+      }
+
+      int limit = this.getTextLimit();
+      length += this.reader.readUntil(this.textBuffer, length, limit - length, "<&");
+
+      if (length == limit) {
+        this.ensureTextCapacity(length + 1);
+        continue;
+      }
 
-      for (;;) {
-        XMLUtil.skipWhitespace(this.reader, buffer);
-        str = XMLUtil.read(this.reader, '&');
+      int token = this.tokenizer.read(this.reader, '&');
 
-        if ((str.charAt(0) == '&') && (str.charAt(1) != '#')) {
-          XMLUtil.processEntity(str, this.reader, this.entityResolver);
+      if (token == '<') {
+        this.reader.unread('<');
+        break;
+      } else if (token == XMLTokenizer.CHARACTER_REFERENCE) {
+        this.textBuffer[length++] = this.tokenizer.getCharacter();
+      } else if (token == XMLTokenizer.ENTITY_REFERENCE) {
+        String entity = this.tokenizer.getEntityName();
+        String literal = XMLUtil.getLiteralEntity(entity, this.entityResolver);
+
+        if (literal != null) {
+          this.ensureTextCapacity(length + literal.length() + 1);
+          literal.getChars(0, literal.length(), this.textBuffer, length);
+          length += literal.length();
         } else {
-          break;
+          XMLUtil.processEntity(entity, this.reader, this.entityResolver);
         }
+      } else {
+        this.textBuffer[length++] = (char) token;
       }
+    }
 
-      if (str.charAt(0) == '<') {
-        str = XMLUtil.read(this.reader, '\0');
+    if ((length > 0) || (!chunked)) {
+      this.characterBuilder.addCharacters(this.textBuffer, 0, length, systemID, lineNr);
+    }
+  }
 
-        if (str.charAt(0) == '/') {
-          XMLUtil.skipWhitespace(this.reader, null);
-          str = XMLUtil.scanIdentifier(this.reader);
 
-          if (!str.equals(fullName)) {
-            XMLUtil.errorWrongClosingTag(reader.getSystemID(), reader.getLineNr(), name, str);
-          }
+  /**
+   * Processes an attribute of an element and adds it to the attributes of the element being
+   * processed.
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  protected void processAttribute() throws Exception {
+    String key = XMLUtil.scanIdentifier(this.reader, this.symbols);
+    XMLUtil.skipWhitespace(this.reader, null);
 
-          XMLUtil.skipWhitespace(this.reader, null);
+    if (this.tokenizer.read(this.reader, '&') != '=') {
+      XMLUtil.errorExpectedInput(reader.getSystemID(), reader.getLineNr(), "`='");
+    }
 
-          if (this.reader.read() != '>') {
-            XMLUtil.errorClosingTagNotEmpty(reader.getSystemID(), reader.getLineNr());
-          }
+    XMLUtil.skipWhitespace(this.reader, null);
+    String value = XMLUtil.scanString(this.reader, '&', this.entityResolver, this.tokenizer);
+    this.attributes.add(key, value);
 
-          this.validator.elementEnded(fullName, this.reader.getSystemID(), this.reader.getLineNr());
-          if (prefix == null) {
-            this.builder.endElement(name, prefix, defaultNamespace);
-          } else {
-            this.builder.endElement(name, prefix, namespaces.getProperty(prefix));
-          }
-          break;
-        } else { // <[^/]
-          this.reader.unread(str.charAt(0));
-          this.scanSomeTag(true, // CDATA allowed
-              defaultNamespace, (Properties) namespaces.clone());
-        }
-      } else { // [^<]
-        if (str.charAt(0) == '&') {
-          ch = XMLUtil.processCharLiteral(str);
-          buffer.append(ch);
-        } else {
-          reader.unread(str.charAt(0));
-        }
-        this.validator.PCDataAdded(this.reader.getSystemID(), this.reader.getLineNr());
-        Reader r = new ContentReader(this.reader, this.entityResolver, buffer.toString());
-        this.builder.addPCData(r, this.reader.getSystemID(), this.reader.getLineNr());
-        r.close();
-      }
+    if (this.validatingElements) {
+      this.validator.attributeAdded(key, value, this.reader.getSystemID(), this.reader.getLineNr());
     }
   }
 
 
   /**
-   * Processes an attribute of an element.
+   * @deprecated As of PicoXML, replaced by {@link #processAttribute()}, which adds the attribute
+   *             to a buffer that is reused for every element. This method is no longer called by
+   *             the parser, so overriding it has no effect. Processes an attribute of an element.
+   *             The attribute is also added to the attributes of the element being processed.
    *
    * @param attrNames contains the names of the attributes.
    * @param attrValues contains the values of the attributes.
@@ -574,21 +1133,14 @@ public class StdXMLParser implements IXMLParser {
    *
    * @throws java.lang.Exception if something went wrong
    */
+  @Deprecated
   protected void processAttribute(Vector attrNames, Vector attrValues, Vector attrTypes)
       throws Exception {
-    String key = XMLUtil.scanIdentifier(this.reader);
-    XMLUtil.skipWhitespace(this.reader, null);
-
-    if (!XMLUtil.read(this.reader, '&').equals("=")) {
-      XMLUtil.errorExpectedInput(reader.getSystemID(), reader.getLineNr(), "`='");
-    }
-
-    XMLUtil.skipWhitespace(this.reader, null);
-    String value = XMLUtil.scanString(this.reader, '&', this.entityResolver);
-    attrNames.addElement(key);
-    attrValues.addElement(value);
+    int index = this.attributes.size();
+    this.processAttribute();
+    attrNames.addElement(this.attributes.getName(index));
+    attrValues.addElement(this.attributes.getValue(index));
     attrTypes.addElement("CDATA");
-    this.validator.attributeAdded(key, value, this.reader.getSystemID(), this.reader.getLineNr());
   }
 
 }
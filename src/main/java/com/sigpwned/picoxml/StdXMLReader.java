@@ -30,20 +30,22 @@
 package com.sigpwned.picoxml;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.LineNumberReader;
 import java.io.PushbackReader;
-import java.io.PushbackInputStream;
 import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.io.StringReader;
-import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Hashtable;
 import java.util.Stack;
 
 
@@ -52,24 +54,127 @@ import java.util.Stack;
  *
  */
 public class StdXMLReader
-   implements IXMLReader
+   implements IXMLReader,
+              IXMLLocator
 {
 
    /**
-    * A stacked reader.
+    * The number of characters which can be pushed back into a stream.
+    */
+   private static final int PUSHBACK_SIZE = 2;
+
+
+   /**
+    * The size of the character window of a stream read from a document.
+    */
+   private static final int BUFFER_SIZE = 8192;
+
+
+   /**
+    * The size of the character window of a stream read from an internal
+    * entity.
+    */
+   private static final int ENTITY_BUFFER_SIZE = 128;
+
+
+   /**
+    * The minimum size of a file which <code>fileReader</code> reads through
+    * a memory mapping instead of a stream.
+    */
+   private static final long MAPPING_THRESHOLD = 1024L * 1024L;
+
+
+   /**
+    * The maximum number of bytes of a memory-mapped file which are examined
+    * to detect its encoding.
+    */
+   private static final int PROLOG_SIZE = 1024;
+
+
+   /**
+    * The maximum number of character sets in the cache.
+    */
+   private static final int MAX_CACHED_CHARSETS = 64;
+
+
+   /**
+    * Position tracking mode in which no positions are tracked. Line ends are
+    * still normalized, but not counted.
+    */
+   public static final int TRACK_NONE = 0;
+
+
+   /**
+    * Position tracking mode in which line numbers are tracked. This is the
+    * default.
+    */
+   public static final int TRACK_LINES = 1;
+
+
+   /**
+    * Position tracking mode in which line numbers, column numbers and
+    * character offsets are tracked.
+    */
+   public static final int TRACK_ALL = 2;
+
+
+   /**
+    * Marks an encoding which is not supported in the cache.
+    */
+   private static final Object UNSUPPORTED_CHARSET = new Object();
+
+
+   /**
+    * The character sets which have been looked up, by name.
+    */
+   private static Hashtable charsets = new Hashtable();
+
+
+   /**
+    * A stacked reader. The characters of the stream are decoded into a
+    * window which is scanned directly; the first <code>PUSHBACK_SIZE</code>
+    * slots of the window are reserved for characters that are pushed back.
+    * The string form of the system ID is cached, and
+    * <code>lineReader</code> refers to the innermost stream which counts
+    * lines, which may be the stream itself. The character offset of a
+    * position in the window is <code>origin</code> plus the position;
+    * <code>lineOffset</code> is only kept up to date when all positions are
+    * tracked.
     *
     */
    private class StackedReader
    {
    
-      PushbackReader pbReader;
+      Reader reader;
+   
+      char[] buffer;
    
-      LineNumberReader lineReader;
+      int position;
+   
+      int limit;
+   
+      int start;
+   
+      boolean sharedBuffer;
+   
+      boolean countLines;
+   
+      boolean trackLines;
+   
+      int lineNr;
+   
+      long origin;
+   
+      long lineOffset;
    
       URL systemId;
    
+      String systemIdString;
+   
       String publicId;
    
+      StackedReader lineReader;
+   
    }
 
 
@@ -85,6 +190,12 @@ public class StdXMLReader
    private StackedReader currentReader;
 
 
+   /**
+    * The position tracking mode.
+    */
+   private int tracking = TRACK_LINES;
+
+
    /**
     * Creates a new reader using a string as input.
     *
@@ -92,10 +203,32 @@ public class StdXMLReader
     */
    public static IXMLReader stringReader(String str)
    {
+      if (str.length() <= BUFFER_SIZE) {
+         char[] chars = str.toCharArray();
+         return new StdXMLReader(chars, 0, chars.length);
+      }
+
       return new StdXMLReader(new StringReader(str));
    }
 
 
+   /**
+    * Creates a new reader using a char array as input. The characters are
+    * scanned directly from the array, which must not be modified while it
+    * is being read.
+    *
+    * @param chars  the array containing the XML data
+    * @param offset the position of the first character in the array
+    * @param length the number of characters to read
+    */
+   public static IXMLReader charArrayReader(char[] chars,
+                                            int    offset,
+                                            int    length)
+   {
+      return new StdXMLReader(chars, offset, length);
+   }
+
+
    /**
     * Creates a new reader using a file as input.
     *
@@ -110,18 +243,55 @@ public class StdXMLReader
       throws FileNotFoundException,
              IOException
    {
+      if (new File(filename).length() >= MAPPING_THRESHOLD) {
+         return StdXMLReader.mappedFileReader(filename);
+      }
+
       StdXMLReader r = new StdXMLReader(new FileInputStream(filename));
       r.setSystemID(filename);
 
       for (int i = 0; i < r.readers.size(); i++) {
          StackedReader sr = (StackedReader) r.readers.elementAt(i);
          sr.systemId = r.currentReader.systemId;
+         sr.systemIdString = r.currentReader.systemIdString;
       }
 
       return r;
    }
 
 
+   /**
+    * Creates a new reader using a memory-mapped file as input. The
+    * characters are decoded straight from the mapped file, without copying
+    * its bytes to the Java heap first.
+    *
+    * @param filename the name of the file containing the XML data
+    *
+    * @throws java.io.FileNotFoundException
+    *     if the file could not be found
+    * @throws java.io.IOException
+    *     if an I/O error occurred
+    */
+   public static IXMLReader mappedFileReader(String filename)
+      throws FileNotFoundException,
+             IOException
+   {
+      FileInputStream stream = new FileInputStream(filename);
+
+      try {
+         StdXMLReader r = new StdXMLReader(stream.getChannel());
+         r.setSystemID(filename);
+         return r;
+      } catch (IOException e) {
+         stream.close();
+         throw e;
+      } catch (RuntimeException e) {
+         stream.close();
+         throw e;
+      }
+   }
+
+
    /**
     * Initializes the reader from a system and public ID.
     *
@@ -158,9 +328,7 @@ public class StdXMLReader
       this.currentReader = new StackedReader();
       this.readers = new Stack();
       Reader reader = this.openStream(publicID, systemIDasURL.toString());
-      this.currentReader.lineReader = new LineNumberReader(reader);
-      this.currentReader.pbReader
-         = new PushbackReader(this.currentReader.lineReader, 2);
+      this.initStream(this.currentReader, reader, BUFFER_SIZE, true);
    }
 
 
@@ -173,9 +341,46 @@ public class StdXMLReader
    {
       this.currentReader = new StackedReader();
       this.readers = new Stack();
-      this.currentReader.lineReader = new LineNumberReader(reader);
-      this.currentReader.pbReader
-         = new PushbackReader(this.currentReader.lineReader, 2);
+      this.initStream(this.currentReader, reader, BUFFER_SIZE, true);
+      this.currentReader.publicId = "";
+
+      try {
+         this.currentReader.systemId = new URL("file:.");
+      } catch (MalformedURLException e) {
+         // never happens
+      }
+   }
+
+
+   /**
+    * Initializes the XML reader from a char array. The array is used as the
+    * window of the stream, so its characters are not copied.
+    *
+    * @param chars  the array containing the XML data
+    * @param offset the position of the first character in the array
+    * @param length the number of characters to read
+    */
+   public StdXMLReader(char[] chars,
+                       int    offset,
+                       int    length)
+   {
+      if ((offset < 0) || (length < 0) || (offset + length > chars.length)) {
+         throw new IndexOutOfBoundsException();
+      }
+
+      this.currentReader = new StackedReader();
+      this.readers = new Stack();
+      this.currentReader.buffer = chars;
+      this.currentReader.start = offset;
+      this.currentReader.position = offset;
+      this.currentReader.limit = offset + length;
+      this.currentReader.sharedBuffer = true;
+      this.currentReader.countLines = true;
+      this.currentReader.trackLines = true;
+      this.currentReader.lineNr = 1;
+      this.currentReader.origin = -offset;
+      this.currentReader.lineOffset = 0;
+      this.currentReader.lineReader = this.currentReader;
       this.currentReader.publicId = "";
 
       try {
@@ -192,9 +397,10 @@ public class StdXMLReader
    protected void finalize()
       throws Throwable
    {
-      this.currentReader.lineReader = null;
-      this.currentReader.pbReader = null;
+      this.currentReader.reader = null;
+      this.currentReader.buffer = null;
       this.currentReader.systemId = null;
+      this.currentReader.systemIdString = null;
       this.currentReader.publicId = null;
       this.currentReader = null;
       this.readers.clear();
@@ -211,64 +417,118 @@ public class StdXMLReader
     */
    protected String getEncoding(String str)
    {
-      if (! str.startsWith("<?xml")) {
-         return null;
-      }
+      return XMLUtil.scanEncoding(str);
+   }
 
-      int index = 5;
 
-      while (index < str.length()) {
-         StringBuffer key = new StringBuffer();
+   /**
+    * Returns the character set with the given name. Character sets are
+    * looked up only once per name.
+    *
+    * @param encoding the name of the character set
+    *
+    * @return the character set, or null if it is not supported
+    */
+   static Charset getCharset(String encoding)
+   {
+      Object charset = charsets.get(encoding);
 
-         while ((index < str.length()) && (str.charAt(index) <= ' ')) {
-            index++;
+      if (charset == null) {
+         try {
+            charset = Charset.forName(encoding);
+         } catch (IllegalArgumentException e) {
+            charset = UNSUPPORTED_CHARSET;
          }
 
-         while ((index < str.length())
-                && (str.charAt(index) >= 'a')
-                && (str.charAt(index) <= 'z')) {
-            key.append(str.charAt(index));
-            index++;
+         if (charsets.size() < MAX_CACHED_CHARSETS) {
+            charsets.put(encoding, charset);
          }
+      }
 
-         while ((index < str.length()) && (str.charAt(index) <= ' ')) {
-            index++;
-         }
+      if (charset == UNSUPPORTED_CHARSET) {
+         return null;
+      }
 
-         if ((index >= str.length()) || (str.charAt(index) != '=')) {
+      return (Charset) charset;
+   }
+
+
+   /**
+    * Reads the first bytes of a stream, which contain the byte order mark
+    * and the XML declaration, if any. Reading stops as soon as enough bytes
+    * are available to detect the encoding.
+    *
+    * @param stream the input for the XML data.
+    * @param bytes  where to put the bytes
+    *
+    * @return the number of bytes read
+    *
+    * @throws java.io.IOException
+    *     if an I/O error occurred
+    */
+   private static int readProlog(InputStream stream,
+                                 byte[]      bytes)
+      throws IOException
+   {
+      int length = 0;
+
+      while (length < bytes.length) {
+         int size = stream.read(bytes, length, bytes.length - length);
+
+         if (size < 0) {
             break;
          }
 
-         while ((index < str.length()) && (str.charAt(index) != '\'')
-                && (str.charAt(index) != '"')) {
-            index++;
+         for (int i = length; i < length + size; i++) {
+            if (bytes[i] == 0x3E) {
+               return length + size;
+            }
          }
 
-         if (index >= str.length()) {
+         length += size;
+
+         if ((length >= 4)
+             && ((bytes[0] != 0x3C) || (bytes[1] != 0x3F)
+                 || (bytes[2] != 0x78) || (bytes[3] != 0x6D))) {
             break;
          }
+      }
 
-         char delimiter = str.charAt(index);
-         index++;
-         int index2 = str.indexOf(delimiter, index);
+      return length;
+   }
 
-         if (index2 < 0) {
-            break;
-         }
 
-         if (key.toString().equals("encoding")) {
-            return str.substring(index, index2);
-         }
+   /**
+    * Detects the encoding of XML data from its byte order mark, the
+    * encoding of its first characters and its XML declaration.
+    *
+    * @param bytes  the first bytes of the XML data
+    * @param length the number of bytes available
+    *
+    * @return the name of the encoding.
+    */
+   protected String detectEncoding(byte[] bytes,
+                                   int    length)
+   {
+      String encoding = XMLUtil.detectByteOrder(bytes, length);
 
-         index = index2 + 1;
+      if (encoding == null) {
+         encoding = this.getEncoding(XMLUtil.scanDeclaration(bytes, length));
       }
 
-      return null;
+      if (encoding == null) {
+         encoding = "UTF-8";
+      }
+
+      return encoding;
    }
 
 
    /**
-    * Converts a stream to a reader while detecting the encoding.
+    * Converts a stream to a reader while detecting the encoding. The first
+    * block of the stream is read only once: the bytes used to detect the
+    * encoding are handed to the decoder. The XML declaration is left in the
+    * data, so no characters are put in <code>charsRead</code>.
     *
     * @param stream    the input for the XML data.
     * @param charsRead buffer where to put characters that have been read
@@ -280,76 +540,252 @@ public class StdXMLReader
                                   StringBuffer charsRead)
       throws IOException
    {
-      PushbackInputStream pbstream = new PushbackInputStream(stream);
-      int b = pbstream.read();
+      byte[] bytes = new byte[BUFFER_SIZE];
+      int length = readProlog(stream, bytes);
+      Charset charset = getCharset(this.detectEncoding(bytes, length));
+      int offset = XMLUtil.getByteOrderMarkLength(bytes, length);
+
+      if (charset == null) {
+         charset = getCharset("UTF-8");
+      } else if (charset.name().equals("UTF-16")) {
+         offset = 0;
+      }
 
-      switch (b) {
-         case 0x00:
-         case 0xFE:
-         case 0xFF:
-            pbstream.unread(b);
-            return new InputStreamReader(pbstream, "UTF-16");
+      int byteEncoding = ByteStreamReader.getEncoding(charset);
 
-         case 0xEF:
-            for (int i = 0; i < 2; i++) {
-               pbstream.read();
-            }
+      if (byteEncoding >= 0) {
+         return new ByteStreamReader(stream, byteEncoding,
+                                     bytes, offset, length);
+      }
 
-            return new InputStreamReader(pbstream, "UTF-8");
+      InputStream prolog = new ByteArrayInputStream(bytes, offset,
+                                                    length - offset);
+      return new InputStreamReader(new SequenceInputStream(prolog, stream),
+                                   charset);
+   }
 
-         case 0x3C:
-            b = pbstream.read();
-            charsRead.append('<');
 
-            while ((b > 0) && (b != 0x3E)) {
-               charsRead.append((char) b);
-               b = pbstream.read();
-            }
+   /**
+    * Initializes the XML reader.
+    *
+    * @param stream the input for the XML data.
+    *
+    * @throws java.io.IOException
+    *		if an I/O error occurred
+    */
+   public StdXMLReader(InputStream stream)
+      throws IOException
+   {
+      StringBuffer charsRead = new StringBuffer();
+      Reader reader = this.stream2reader(stream, charsRead);
+      this.currentReader = new StackedReader();
+      this.readers = new Stack();
+      this.initStream(this.currentReader, reader, BUFFER_SIZE, true);
+      this.currentReader.publicId = "";
 
-            if (b > 0) {
-               charsRead.append((char) b);
-            }
+      try {
+         this.currentReader.systemId = new URL("file:.");
+      } catch (MalformedURLException e) {
+         // never happens
+      }
 
-            String encoding = this.getEncoding(charsRead.toString());
+      if (charsRead.length() > 0) {
+         this.startNewStream(new StringReader(charsRead.toString()));
+      }
+   }
 
-            if (encoding == null) {
-               return new InputStreamReader(pbstream, "UTF-8");
-            }
 
-            charsRead.setLength(0);
+   /**
+    * Initializes a stacked reader.
+    *
+    * @param sr         the stacked reader
+    * @param reader     the reader to decode the characters from
+    * @param bufferSize the size of the character window
+    * @param countLines true if line ends have to be normalized and counted
+    */
+   private void initStream(StackedReader sr,
+                           Reader        reader,
+                           int           bufferSize,
+                           boolean       countLines)
+   {
+      sr.reader = reader;
+      sr.buffer = new char[PUSHBACK_SIZE + bufferSize];
+      sr.position = PUSHBACK_SIZE;
+      sr.limit = PUSHBACK_SIZE;
+      sr.start = PUSHBACK_SIZE;
+      sr.sharedBuffer = false;
+      sr.countLines = countLines;
+      sr.trackLines = countLines && (this.tracking != TRACK_NONE);
+      sr.lineNr = 1;
+      sr.origin = -PUSHBACK_SIZE;
+      sr.lineOffset = 0;
+      sr.lineReader = countLines ? sr : null;
+   }
 
-            try {
-               return new InputStreamReader(pbstream, encoding);
-            } catch (UnsupportedEncodingException e) {
-               return new InputStreamReader(pbstream, "UTF-8");
-            }
 
-            default:
-               charsRead.append((char) b);
-               return new InputStreamReader(pbstream, "UTF-8");
+   /**
+    * Decodes the next characters of a stream into its window. This method
+    * may only be called if all characters in the window have been read.
+    *
+    * @param sr the stacked reader
+    *
+    * @return false if the stream has no more characters left to be read
+    *
+    * @throws java.io.IOException
+    *		if an I/O error occurred
+    */
+   private boolean fill(StackedReader sr)
+      throws IOException
+   {
+      if (sr.reader == null) {
+         return false;
+      }
+
+      if ((this.tracking == TRACK_ALL) && sr.trackLines) {
+         this.findLineStart(sr, sr.limit);
+      }
+
+      int size;
+
+      do {
+         size = sr.reader.read(sr.buffer, PUSHBACK_SIZE,
+                               sr.buffer.length - PUSHBACK_SIZE);
+      } while (size == 0);
+
+      if (size < 0) {
+         return false;
       }
+
+      sr.origin += sr.limit - PUSHBACK_SIZE;
+      sr.position = PUSHBACK_SIZE;
+      sr.limit = PUSHBACK_SIZE + size;
+      return true;
    }
 
 
    /**
-    * Initializes the XML reader.
+    * Records the offset of the last line start in the window of a stream
+    * before the characters in the window are discarded.
     *
-    * @param stream the input for the XML data.
+    * @param sr  the stacked reader
+    * @param end the position after the last character to look at
+    */
+   private void findLineStart(StackedReader sr,
+                              int           end)
+   {
+      for (int i = end - 1; i >= sr.start; i--) {
+         char ch = sr.buffer[i];
+
+         if ((ch == '\n') || (ch == '\r')) {
+            sr.lineOffset = sr.origin + i + 1;
+            return;
+         }
+      }
+   }
+
+
+   /**
+    * Replaces the window of a stream which is shared with the caller by a
+    * private copy of the characters left to be read, so that characters can
+    * be pushed back without modifying the array of the caller.
+    *
+    * @param sr the stacked reader
+    */
+   private void copySharedBuffer(StackedReader sr)
+   {
+      if ((this.tracking == TRACK_ALL) && sr.trackLines) {
+         this.findLineStart(sr, sr.position);
+      }
+
+      sr.origin += sr.position - PUSHBACK_SIZE;
+      char[] buffer = new char[PUSHBACK_SIZE + sr.limit - sr.position];
+      System.arraycopy(sr.buffer, sr.position, buffer, PUSHBACK_SIZE,
+                       sr.limit - sr.position);
+      sr.buffer = buffer;
+      sr.limit = buffer.length;
+      sr.position = PUSHBACK_SIZE;
+      sr.start = PUSHBACK_SIZE;
+      sr.sharedBuffer = false;
+   }
+
+
+   /**
+    * Closes the current stream and returns to its parent stream.
     *
     * @throws java.io.IOException
     *		if an I/O error occurred
     */
-   public StdXMLReader(InputStream stream)
+   private void popStream()
       throws IOException
    {
-      PushbackInputStream pbstream = new PushbackInputStream(stream);
-      StringBuffer charsRead = new StringBuffer();
-      Reader reader = this.stream2reader(stream, charsRead);
+      if (this.currentReader.reader != null) {
+         this.currentReader.reader.close();
+      }
+
+      this.currentReader = (StackedReader) this.readers.pop();
+   }
+
+
+   /**
+    * Converts a file channel to a reader which decodes the memory-mapped
+    * file while detecting the encoding. The XML declaration is left in the
+    * data.
+    *
+    * @param channel the channel of the file containing the XML data.
+    *
+    * @throws java.io.IOException
+    *     if an I/O error occurred
+    */
+   protected Reader channel2reader(FileChannel channel)
+      throws IOException
+   {
+      MappedFileReader reader = new MappedFileReader(channel);
+      byte[] bytes = new byte[PROLOG_SIZE];
+      int length = 0;
+
+      while (length < bytes.length) {
+         int b = reader.peek(length);
+
+         if (b < 0) {
+            break;
+         }
+
+         bytes[length++] = (byte) b;
+
+         if ((b == 0x3E) && (bytes[0] == 0x3C)) {
+            break;
+         }
+      }
+
+      Charset charset = getCharset(this.detectEncoding(bytes, length));
+
+      if (charset != null) {
+         if (! charset.name().equals("UTF-16")) {
+            reader.skip(XMLUtil.getByteOrderMarkLength(bytes, length));
+         }
+
+         reader.setCharset(charset);
+      }
+
+      return reader;
+   }
+
+
+   /**
+    * Initializes the XML reader from a memory-mapped file.
+    *
+    * @param channel the channel of the file containing the XML data.
+    *
+    * @throws java.io.IOException
+    *		if an I/O error occurred
+    */
+   public StdXMLReader(FileChannel channel)
+      throws IOException
+   {
+      Reader reader = this.channel2reader(channel);
       this.currentReader = new StackedReader();
       this.readers = new Stack();
-      this.currentReader.lineReader = new LineNumberReader(reader);
-      this.currentReader.pbReader
-         = new PushbackReader(this.currentReader.lineReader, 2);
+      this.initStream(this.currentReader, reader, BUFFER_SIZE, true);
       this.currentReader.publicId = "";
 
       try {
@@ -357,8 +793,6 @@ public class StdXMLReader
       } catch (MalformedURLException e) {
          // never happens
       }
-
-      this.startNewStream(new StringReader(charsRead.toString()));
    }
 
 
@@ -373,19 +807,36 @@ public class StdXMLReader
    public char read()
       throws IOException
    {
-      int ch = this.currentReader.pbReader.read();
+      StackedReader sr = this.currentReader;
 
-      while (ch < 0) {
+      while ((sr.position >= sr.limit) && (! this.fill(sr))) {
          if (this.readers.empty()) {
             throw new IOException("Unexpected EOF");
          }
 
-         this.currentReader.pbReader.close();
-         this.currentReader = (StackedReader) this.readers.pop();
-         ch = this.currentReader.pbReader.read();
+         this.popStream();
+         sr = this.currentReader;
+      }
+
+      char ch = sr.buffer[sr.position++];
+
+      if ((ch <= '\r') && sr.countLines) {
+         if (ch == '\r') {
+            ch = '\n';
+
+            if ((sr.position < sr.limit) || this.fill(sr)) {
+               if (sr.buffer[sr.position] == '\n') {
+                  sr.position++;
+               }
+            }
+         }
+
+         if ((ch == '\n') && sr.trackLines) {
+            sr.lineNr++;
+         }
       }
 
-      return (char) ch;
+      return ch;
    }
 
 
@@ -399,14 +850,8 @@ public class StdXMLReader
    public boolean atEOFOfCurrentStream()
       throws IOException
    {
-      int ch = this.currentReader.pbReader.read();
-
-      if (ch < 0) {
-         return true;
-      } else {
-         this.currentReader.pbReader.unread(ch);
-         return false;
-      }
+      StackedReader sr = this.currentReader;
+      return (sr.position >= sr.limit) && (! this.fill(sr));
    }
 
 
@@ -419,19 +864,17 @@ public class StdXMLReader
    public boolean atEOF()
       throws IOException
    {
-      int ch = this.currentReader.pbReader.read();
+      StackedReader sr = this.currentReader;
 
-      while (ch < 0) {
+      while ((sr.position >= sr.limit) && (! this.fill(sr))) {
          if (this.readers.empty()) {
             return true;
          }
 
-         this.currentReader.pbReader.close();
-         this.currentReader = (StackedReader) this.readers.pop();
-         ch = this.currentReader.pbReader.read();
+         this.popStream();
+         sr = this.currentReader;
       }
 
-      this.currentReader.pbReader.unread(ch);
       return false;
    }
 
@@ -447,7 +890,287 @@ public class StdXMLReader
    public void unread(char ch)
       throws IOException
    {
-      this.currentReader.pbReader.unread(ch);
+      StackedReader sr = this.currentReader;
+
+      if (sr.sharedBuffer) {
+         if ((sr.position > sr.start)
+             && ((sr.buffer[sr.position - 1] == ch)
+                 || ((ch == '\n') && sr.countLines
+                     && (sr.buffer[sr.position - 1] == '\r')))) {
+            sr.position--;
+
+            if ((ch == '\n') && sr.trackLines) {
+               sr.lineNr--;
+            }
+
+            return;
+         }
+
+         this.copySharedBuffer(sr);
+      }
+
+      if (sr.position == 0) {
+         throw new IOException("Pushback buffer overflow");
+      }
+
+      sr.buffer[--sr.position] = ch;
+
+      if ((ch == '\n') && sr.trackLines) {
+         sr.lineNr--;
+      }
+   }
+
+
+   /**
+    * Reads characters into an array up to, but not including, the first
+    * character which is one of the delimiters. Runs of characters are copied
+    * straight from the window of the current stream.
+    *
+    * @param buffer     where to put the characters
+    * @param offset     the position in the buffer of the first character
+    * @param length     the maximum number of characters to read
+    * @param delimiters the characters which end the run
+    *
+    * @return the number of characters read
+    *
+    * @throws java.io.IOException
+    *		if no character could be read
+    */
+   public int readUntil(char[] buffer,
+                        int    offset,
+                        int    length,
+                        String delimiters)
+      throws IOException
+   {
+      int index = offset;
+      int end = offset + length;
+
+      while (index < end) {
+         StackedReader sr = this.currentReader;
+         char[] chars = sr.buffer;
+         int pos = sr.position;
+         int stop = Math.min(sr.limit, pos + end - index);
+
+         while (pos < stop) {
+            char ch = chars[pos];
+
+            if (delimiters.indexOf(ch) >= 0) {
+               break;
+            }
+
+            if ((ch <= '\r') && sr.countLines) {
+               if (ch == '\r') {
+                  break;
+               } else if ((ch == '\n') && sr.trackLines) {
+                  sr.lineNr++;
+               }
+            }
+
+            pos++;
+         }
+
+         int count = pos - sr.position;
+         System.arraycopy(chars, sr.position, buffer, index, count);
+         index += count;
+         sr.position = pos;
+
+         if (index == end) {
+            break;
+         }
+
+         char ch = this.read();
+
+         if (delimiters.indexOf(ch) >= 0) {
+            this.unread(ch);
+            break;
+         }
+
+         buffer[index++] = ch;
+      }
+
+      return index - offset;
+   }
+
+
+   /**
+    * Reads the characters of a name and appends them to a buffer. The first
+    * character which is not part of the name is pushed back.
+    *
+    * @param buffer where to put the characters
+    *
+    * @throws java.io.IOException
+    *		if no character could be read
+    */
+   public void readName(StringBuffer buffer)
+      throws IOException
+   {
+      for (;;) {
+         StackedReader sr = this.currentReader;
+         char[] chars = sr.buffer;
+         int pos = sr.position;
+
+         while ((pos < sr.limit) && XMLUtil.isNameChar(chars[pos])) {
+            pos++;
+         }
+
+         buffer.append(chars, sr.position, pos - sr.position);
+         sr.position = pos;
+
+         if (pos < sr.limit) {
+            break;
+         }
+
+         char ch = this.read();
+
+         if (! XMLUtil.isNameChar(ch)) {
+            this.unread(ch);
+            break;
+         }
+
+         buffer.append(ch);
+      }
+   }
+
+
+   /**
+    * Reads a name and returns its symbol. A name which lies within the window
+    * of the current stream is looked up without copying its characters.
+    *
+    * @param symbols the symbol table
+    *
+    * @return the symbol of the name
+    *
+    * @throws java.io.IOException
+    *		if no character could be read
+    */
+   public String readName(XMLSymbolTable symbols)
+      throws IOException
+   {
+      StackedReader sr = this.currentReader;
+      char[] chars = sr.buffer;
+      int pos = sr.position;
+
+      while ((pos < sr.limit) && XMLUtil.isNameChar(chars[pos])) {
+         pos++;
+      }
+
+      if (pos < sr.limit) {
+         String name = symbols.getSymbol(chars, sr.position,
+                                         pos - sr.position);
+         sr.position = pos;
+         return name;
+      }
+
+      StringBuffer buffer = new StringBuffer();
+      this.readName(buffer);
+      return symbols.getSymbol(buffer.toString());
+   }
+
+
+   /**
+    * Skips spaces, tabs and line ends. The first character which is not
+    * whitespace is pushed back.
+    *
+    * @param buffer where to put the whitespace, or null
+    *
+    * @throws java.io.IOException
+    *		if no character could be read
+    */
+   public void skipWhitespace(StringBuffer buffer)
+      throws IOException
+   {
+      for (;;) {
+         StackedReader sr = this.currentReader;
+         char[] chars = sr.buffer;
+         int pos = sr.position;
+         boolean tabs = false;
+
+         while (pos < sr.limit) {
+            char ch = chars[pos];
+
+            if (ch == '\n') {
+               if (sr.trackLines) {
+                  sr.lineNr++;
+               }
+            } else if (ch == '\t') {
+               tabs = true;
+            } else if (ch != ' ') {
+               break;
+            }
+
+            pos++;
+         }
+
+         if ((buffer != null) && (pos > sr.position)) {
+            if (tabs) {
+               for (int i = sr.position; i < pos; i++) {
+                  buffer.append((chars[i] == '\n') ? '\n' : ' ');
+               }
+            } else {
+               buffer.append(chars, sr.position, pos - sr.position);
+            }
+         }
+
+         sr.position = pos;
+         char ch = this.read();
+
+         if ((ch != ' ') && (ch != '\t') && (ch != '\n')) {
+            this.unread(ch);
+            break;
+         }
+
+         if (buffer != null) {
+            buffer.append((ch == '\n') ? '\n' : ' ');
+         }
+      }
+   }
+
+
+   /**
+    * Skips characters up to and including the first occurrence of a
+    * literal. Characters which cannot start the literal are skipped straight
+    * in the window of the current stream.
+    *
+    * @param literal the non-empty literal
+    *
+    * @throws java.io.IOException
+    *		if no character could be read
+    */
+   public void skipPast(String literal)
+      throws IOException
+   {
+      char first = literal.charAt(0);
+      int matched = 0;
+
+      while (matched < literal.length()) {
+         if (matched == 0) {
+            StackedReader sr = this.currentReader;
+            char[] chars = sr.buffer;
+            int pos = sr.position;
+
+            while (pos < sr.limit) {
+               char ch = chars[pos];
+
+               if (ch == first) {
+                  break;
+               }
+
+               if ((ch <= '\r') && sr.countLines) {
+                  if (ch == '\r') {
+                     break;
+                  } else if ((ch == '\n') && sr.trackLines) {
+                     sr.lineNr++;
+                  }
+               }
+
+               pos++;
+            }
+
+            sr.position = pos;
+         }
+
+         matched = XMLUtil.matchLiteral(literal, matched, this.read());
+      }
    }
 
 
@@ -486,6 +1209,7 @@ public class StdXMLReader
 
       this.currentReader.publicId = publicID;
       this.currentReader.systemId = url;
+      this.currentReader.systemIdString = null;
       StringBuffer charsRead = new StringBuffer();
       Reader reader = this.stream2reader(url.openStream(), charsRead);
 
@@ -535,15 +1259,15 @@ public class StdXMLReader
       this.currentReader = new StackedReader();
 
       if (isInternalEntity) {
-         this.currentReader.lineReader = null;
-         this.currentReader.pbReader = new PushbackReader(reader, 2);
+         this.initStream(this.currentReader, reader, ENTITY_BUFFER_SIZE,
+                         false);
+         this.currentReader.lineReader = oldReader.lineReader;
       } else {
-         this.currentReader.lineReader = new LineNumberReader(reader);
-         this.currentReader.pbReader
-            = new PushbackReader(this.currentReader.lineReader, 2);
+         this.initStream(this.currentReader, reader, BUFFER_SIZE, true);
       }
 
       this.currentReader.systemId = oldReader.systemId;
+      this.currentReader.systemIdString = oldReader.systemIdString;
       this.currentReader.publicId = oldReader.publicId;
    }
 
@@ -562,17 +1286,99 @@ public class StdXMLReader
     */
    public int getLineNr()
    {
-      if (this.currentReader.lineReader == null) {
-         StackedReader sr = (StackedReader) this.readers.peek();
+      if (this.tracking == TRACK_NONE) {
+         return XMLElement.NO_LINE;
+      }
 
-         if (sr.lineReader == null) {
-            return 0;
-         } else {
-            return sr.lineReader.getLineNumber() + 1;
+      StackedReader sr = this.currentReader.lineReader;
+
+      if (sr == null) {
+         return 0;
+      }
+
+      return sr.lineNr;
+   }
+
+
+   /**
+    * Returns the current column number, or -1 if not all positions are
+    * tracked. The column is computed from the window of the stream, so it
+    * costs nothing until it is asked for.
+    */
+   public int getColumnNr()
+   {
+      StackedReader sr = this.currentReader.lineReader;
+
+      if ((this.tracking != TRACK_ALL) || (sr == null)) {
+         return -1;
+      }
+
+      for (int i = sr.position - 1; i >= sr.start; i--) {
+         char ch = sr.buffer[i];
+
+         if ((ch == '\n') || (ch == '\r')) {
+            return sr.position - i;
          }
       }
 
-      return this.currentReader.lineReader.getLineNumber() + 1;
+      return (int) (sr.origin + sr.position - sr.lineOffset) + 1;
+   }
+
+
+   /**
+    * Returns the number of characters read from the current stream, or -1
+    * if not all positions are tracked. A line end which consists of a
+    * carriage return and a line feed counts as two characters.
+    */
+   public long getCharacterOffset()
+   {
+      StackedReader sr = this.currentReader.lineReader;
+
+      if ((this.tracking != TRACK_ALL) || (sr == null)) {
+         return -1;
+      }
+
+      return sr.origin + sr.position;
+   }
+
+
+   /**
+    * Sets how much of the position in the data is tracked. Turning tracking
+    * off saves the line bookkeeping, in which case getLineNr returns
+    * XMLElement.NO_LINE. The mode should be set before any data is read.
+    *
+    * @param tracking TRACK_NONE, TRACK_LINES or TRACK_ALL
+    *
+    * @see #TRACK_NONE
+    * @see #TRACK_LINES
+    * @see #TRACK_ALL
+    */
+   public void setPositionTracking(int tracking)
+   {
+      if ((tracking < TRACK_NONE) || (tracking > TRACK_ALL)) {
+         throw new IllegalArgumentException("Unknown tracking mode: "
+                                            + tracking);
+      }
+
+      this.tracking = tracking;
+      StackedReader sr = this.currentReader;
+      sr.trackLines = sr.countLines && (tracking != TRACK_NONE);
+
+      for (int i = 0; i < this.readers.size(); i++) {
+         sr = (StackedReader) this.readers.elementAt(i);
+         sr.trackLines = sr.countLines && (tracking != TRACK_NONE);
+      }
+   }
+
+
+   /**
+    * Returns how much of the position in the data is tracked.
+    *
+    * @return TRACK_NONE, TRACK_LINES or TRACK_ALL
+    */
+   public int getPositionTracking()
+   {
+      return this.tracking;
    }
 
 
@@ -589,6 +1395,7 @@ public class StdXMLReader
    {
       this.currentReader.systemId = new URL(this.currentReader.systemId,
                                             systemID);
+      this.currentReader.systemIdString = null;
    }
 
 
@@ -604,11 +1411,38 @@ public class StdXMLReader
 
 
    /**
-    * Returns the current system ID.
+    * Sets the system ID and the line number of the current stream. This is
+    * used when the stream is a part of a document which has been read
+    * elsewhere, so that errors are reported at their place in the document.
+    *
+    * @param systemID the system ID of the document, or null to keep the
+    *                 system ID of the stream
+    * @param lineNr   the line number of the first character of the stream
+    */
+   void setLocation(String systemID,
+                    int    lineNr)
+   {
+      if (systemID != null) {
+         this.currentReader.systemIdString = systemID;
+      }
+
+      this.currentReader.lineNr = lineNr;
+   }
+
+
+   /**
+    * Returns the current system ID. Its string form is computed only once
+    * per stream.
     */
    public String getSystemID()
    {
-      return this.currentReader.systemId.toString();
+      StackedReader sr = this.currentReader;
+
+      if (sr.systemIdString == null) {
+         sr.systemIdString = sr.systemId.toString();
+      }
+
+      return sr.systemIdString;
    }
 
 
@@ -620,4 +1454,38 @@ public class StdXMLReader
       return this.currentReader.publicId;
    }
 
+
+   /**
+    * Closes all the streams of the reader. No characters can be read
+    * afterwards.
+    *
+    * @throws java.io.IOException
+    *     if an I/O error occurred
+    */
+   public void close()
+      throws IOException
+   {
+      while (! this.readers.empty()) {
+         this.popStream();
+      }
+
+      StackedReader sr = this.currentReader;
+
+      if (sr.reader != null) {
+         sr.reader.close();
+         sr.reader = null;
+      }
+
+      sr.position = sr.limit;
+   }
+
+
+   /**
+    * Returns the reader itself, which keeps track of its position.
+    */
+   public IXMLLocator getLocator()
+   {
+      return this;
+   }
+
 }
@@ -0,0 +1,212 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+/**
+ * XMLAttributeBuffer holds the attributes of the element being parsed. The
+ * buffer is reused for every element, so its arrays only grow when an
+ * element has more attributes than any element before it.
+ *
+ */
+class XMLAttributeBuffer
+{
+
+   /**
+    * The initial number of attributes that fit in the buffer.
+    */
+   private static final int INITIAL_CAPACITY = 16;
+
+
+   /**
+    * The full names of the attributes.
+    */
+   private String[] names;
+
+
+   /**
+    * The values of the attributes.
+    */
+   private String[] values;
+
+
+   /**
+    * Whether the names of the attributes start with <code>xmlns</code>.
+    */
+   private boolean[] reserved;
+
+
+   /**
+    * The number of attributes.
+    */
+   private int size;
+
+
+   /**
+    * The number of attributes whose name starts with <code>xmlns</code>.
+    */
+   private int reservedCount;
+
+
+   /**
+    * Creates an empty buffer.
+    */
+   XMLAttributeBuffer()
+   {
+      this.names = new String[INITIAL_CAPACITY];
+      this.values = new String[INITIAL_CAPACITY];
+      this.reserved = new boolean[INITIAL_CAPACITY];
+      this.size = 0;
+      this.reservedCount = 0;
+   }
+
+
+   /**
+    * Cleans up the object when it's destroyed.
+    */
+   protected void finalize()
+      throws Throwable
+   {
+      this.names = null;
+      this.values = null;
+      this.reserved = null;
+      super.finalize();
+   }
+
+
+   /**
+    * Removes all attributes from the buffer.
+    */
+   void clear()
+   {
+      for (int i = 0; i < this.size; i++) {
+         this.names[i] = null;
+         this.values[i] = null;
+      }
+
+      this.size = 0;
+      this.reservedCount = 0;
+   }
+
+
+   /**
+    * Adds an attribute.
+    *
+    * @param name  the full name of the attribute
+    * @param value the value of the attribute
+    */
+   void add(String name,
+            String value)
+   {
+      if (this.size == this.names.length) {
+         int capacity = this.size * 2;
+         String[] newNames = new String[capacity];
+         String[] newValues = new String[capacity];
+         boolean[] newReserved = new boolean[capacity];
+         System.arraycopy(this.names, 0, newNames, 0, this.size);
+         System.arraycopy(this.values, 0, newValues, 0, this.size);
+         System.arraycopy(this.reserved, 0, newReserved, 0, this.size);
+         this.names = newNames;
+         this.values = newValues;
+         this.reserved = newReserved;
+      }
+
+      boolean isReserved = name.startsWith("xmlns");
+      this.names[this.size] = name;
+      this.values[this.size] = value;
+      this.reserved[this.size] = isReserved;
+      this.size++;
+
+      if (isReserved) {
+         this.reservedCount++;
+      }
+   }
+
+
+   /**
+    * Returns the number of attributes.
+    *
+    * @return the number of attributes
+    */
+   int size()
+   {
+      return this.size;
+   }
+
+
+   /**
+    * Returns the full name of an attribute.
+    *
+    * @param index the index of the attribute
+    *
+    * @return the name
+    */
+   String getName(int index)
+   {
+      return this.names[index];
+   }
+
+
+   /**
+    * Returns the value of an attribute.
+    *
+    * @param index the index of the attribute
+    *
+    * @return the value
+    */
+   String getValue(int index)
+   {
+      return this.values[index];
+   }
+
+
+   /**
+    * Returns true if the name of an attribute starts with
+    * <code>xmlns</code>. Such attributes are namespace declarations, and
+    * they are not passed to the builder.
+    *
+    * @param index the index of the attribute
+    */
+   boolean isReserved(int index)
+   {
+      return this.reserved[index];
+   }
+
+
+   /**
+    * Returns true if the name of any attribute starts with
+    * <code>xmlns</code>.
+    */
+   boolean hasReserved()
+   {
+      return this.reservedCount > 0;
+   }
+
+}
@@ -0,0 +1,275 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+
+/**
+ * XMLBase64Writer decodes Base64 text which is written to it and writes
+ * the decoded bytes to an output stream. Whitespace is ignored, so the text
+ * of an element can be written as it is parsed, e.g. by an
+ * {@link com.sigpwned.picoxml.XMLStreamingTextBuilder}.
+ *
+ */
+public class XMLBase64Writer
+   extends Writer
+{
+
+   /**
+    * The value of each Base64 character, or -1 for characters which are
+    * not part of the alphabet.
+    */
+   private static final byte[] VALUES = new byte[128];
+
+
+   static {
+      String alphabet
+         = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+      for (int i = 0; i < VALUES.length; i++) {
+         VALUES[i] = -1;
+      }
+
+      for (int i = 0; i < alphabet.length(); i++) {
+         VALUES[alphabet.charAt(i)] = (byte) i;
+      }
+   }
+
+
+   /**
+    * The stream to write the decoded bytes to.
+    */
+   private OutputStream stream;
+
+
+   /**
+    * The decoded bytes which have not been written to the stream yet.
+    */
+   private byte[] buffer;
+
+
+   /**
+    * The number of bytes in the buffer.
+    */
+   private int count;
+
+
+   /**
+    * The bits of the characters of the current quantum.
+    */
+   private int quantum;
+
+
+   /**
+    * The number of characters of the current quantum.
+    */
+   private int quantumSize;
+
+
+   /**
+    * True if padding has been encountered, so no more data may follow.
+    */
+   private boolean padded;
+
+
+   /**
+    * Creates the writer.
+    *
+    * @param stream the stream to write the decoded bytes to.
+    */
+   public XMLBase64Writer(OutputStream stream)
+   {
+      this.stream = stream;
+      this.buffer = new byte[4096];
+      this.count = 0;
+      this.quantum = 0;
+      this.quantumSize = 0;
+      this.padded = false;
+   }
+
+
+   /**
+    * Cleans up the object when it's destroyed.
+    */
+   protected void finalize()
+      throws Throwable
+   {
+      this.stream = null;
+      this.buffer = null;
+      super.finalize();
+   }
+
+
+   /**
+    * Decodes characters.
+    *
+    * @param chars  the characters.
+    * @param offset the position of the first character.
+    * @param length the number of characters.
+    *
+    * @throws java.io.IOException
+    *     if the characters are not valid Base64 data or if the decoded
+    *     bytes could not be written.
+    */
+   public void write(char[] chars,
+                     int    offset,
+                     int    length)
+      throws IOException
+   {
+      for (int i = offset; i < offset + length; i++) {
+         char ch = chars[i];
+
+         if ((ch == ' ') || (ch == '\t') || (ch == '\n') || (ch == '\r')) {
+            continue;
+         }
+
+         if (ch == '=') {
+            if (! this.padded) {
+               if (this.quantumSize < 2) {
+                  throw new IOException("Invalid Base64 data");
+               }
+
+               this.endQuantum();
+               this.padded = true;
+            }
+
+            continue;
+         }
+
+         if (this.padded || (ch >= VALUES.length) || (VALUES[ch] < 0)) {
+            throw new IOException("Invalid Base64 character: `" + ch + "'");
+         }
+
+         this.quantum = (this.quantum << 6) | VALUES[ch];
+         this.quantumSize++;
+
+         if (this.quantumSize == 4) {
+            if (this.count + 3 > this.buffer.length) {
+               this.writeBuffer();
+            }
+
+            this.buffer[this.count++] = (byte) (this.quantum >> 16);
+            this.buffer[this.count++] = (byte) (this.quantum >> 8);
+            this.buffer[this.count++] = (byte) this.quantum;
+            this.quantum = 0;
+            this.quantumSize = 0;
+         }
+      }
+   }
+
+
+   /**
+    * Decodes the characters of an incomplete quantum at the end of the
+    * data.
+    *
+    * @throws java.io.IOException
+    *     if the quantum is not valid or if the decoded bytes could not be
+    *     written.
+    */
+   private void endQuantum()
+      throws IOException
+   {
+      if (this.quantumSize == 1) {
+         throw new IOException("Invalid Base64 data");
+      }
+
+      if (this.count + 2 > this.buffer.length) {
+         this.writeBuffer();
+      }
+
+      if (this.quantumSize == 2) {
+         this.buffer[this.count++] = (byte) (this.quantum >> 4);
+      } else if (this.quantumSize == 3) {
+         this.buffer[this.count++] = (byte) (this.quantum >> 10);
+         this.buffer[this.count++] = (byte) (this.quantum >> 2);
+      }
+
+      this.quantum = 0;
+      this.quantumSize = 0;
+   }
+
+
+   /**
+    * Writes the decoded bytes in the buffer to the stream.
+    *
+    * @throws java.io.IOException
+    *     if the bytes could not be written.
+    */
+   private void writeBuffer()
+      throws IOException
+   {
+      this.stream.write(this.buffer, 0, this.count);
+      this.count = 0;
+   }
+
+
+   /**
+    * Writes the decoded bytes to the stream and flushes it. An incomplete
+    * quantum is kept until more data is written.
+    *
+    * @throws java.io.IOException
+    *     if the bytes could not be written.
+    */
+   public void flush()
+      throws IOException
+   {
+      this.writeBuffer();
+      this.stream.flush();
+   }
+
+
+   /**
+    * Decodes an incomplete quantum at the end of unpadded data, writes the
+    * decoded bytes to the stream and closes it.
+    *
+    * @throws java.io.IOException
+    *     if the data is not valid or if the bytes could not be written.
+    */
+   public void close()
+      throws IOException
+   {
+      if (this.stream == null) {
+         return;
+      }
+
+      try {
+         this.endQuantum();
+         this.writeBuffer();
+      } finally {
+         this.stream.close();
+         this.stream = null;
+      }
+   }
+
+}
@@ -0,0 +1,356 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ *
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * XMLContentStore keeps the #PCDATA content of elements which is longer than a threshold in a
+ * temporary file instead of on the heap. The content is read back every time it is retrieved, so
+ * many large trees can be kept in memory. Elements created by a prototype share its store:
+ *
+ * <PRE>
+ * XMLElement prototype = new XMLElement();
+ * prototype.setContentStore(new XMLContentStore(65536));
+ * parser.setBuilder(new StdXMLBuilder(prototype));
+ * </PRE>
+ *
+ * The temporary file only grows: content which is replaced keeps its space until the store is
+ * closed. The file is then deleted, after which the stored content cannot be retrieved anymore.
+ * The file is not registered to be deleted when the JVM exits, so a store should be closed once
+ * its elements are no longer needed.
+ *
+ * @see com.sigpwned.picoxml.XMLElement#setContentStore
+ */
+public class XMLContentStore {
+
+  /**
+   * The number of characters which are written or read at once.
+   */
+  private static final int CHUNK_SIZE = 8192;
+
+
+  /**
+   * The length above which content is stored.
+   */
+  private int threshold;
+
+
+  /**
+   * The directory of the temporary file, or null for the default directory.
+   */
+  private File directory;
+
+
+  /**
+   * The temporary file, or null if no content has been stored yet.
+   */
+  private File file;
+
+
+  /**
+   * The channel to the temporary file, or null if no content has been stored yet.
+   */
+  private FileChannel channel;
+
+
+  /**
+   * The size of the temporary file in bytes.
+   */
+  private long size;
+
+
+  /**
+   * The buffer for writing and reading chunks.
+   */
+  private ByteBuffer buffer;
+
+
+  /**
+   * True if the store has been closed.
+   */
+  private boolean closed;
+
+
+  /**
+   * Creates a store which puts its temporary file in the default temporary directory.
+   *
+   * @param threshold the length above which content is stored
+   */
+  public XMLContentStore(int threshold) {
+    this(threshold, null);
+  }
+
+
+  /**
+   * Creates a store.
+   *
+   * @param threshold the length above which content is stored
+   * @param directory the directory of the temporary file, or null for the default temporary
+   *        directory
+   */
+  public XMLContentStore(int threshold, File directory) {
+    this.threshold = threshold;
+    this.directory = directory;
+    this.file = null;
+    this.channel = null;
+    this.size = 0;
+    this.buffer = ByteBuffer.allocate(2 * CHUNK_SIZE);
+    this.closed = false;
+  }
+
+
+  /**
+   * Cleans up the object when it's destroyed.
+   */
+  @Override
+  protected void finalize() throws Throwable {
+    this.close();
+    this.directory = null;
+    this.buffer = null;
+    super.finalize();
+  }
+
+
+  /**
+   * Returns the length above which content is stored.
+   *
+   * @return the threshold
+   */
+  public int getThreshold() {
+    return this.threshold;
+  }
+
+
+  /**
+   * Stores content.
+   *
+   * @param content the content
+   *
+   * @return the position of the content in the store
+   *
+   * @throws java.io.IOException if the content could not be written
+   */
+  public synchronized long store(String content) throws IOException {
+    if (this.closed) {
+      throw new IOException("Content store is closed");
+    }
+
+    if (this.channel == null) {
+      this.file = File.createTempFile("picoxml", ".tmp", this.directory);
+      this.channel = new RandomAccessFile(this.file, "rw").getChannel();
+    }
+
+    long offset = this.size;
+    int length = content.length();
+    this.buffer.clear();
+    this.buffer.putInt(length);
+
+    for (int i = 0; i < length; i++) {
+      if (!this.buffer.hasRemaining()) {
+        this.writeBuffer();
+        this.buffer.clear();
+      }
+
+      this.buffer.putChar(content.charAt(i));
+    }
+
+    this.writeBuffer();
+    return offset;
+  }
+
+
+  /**
+   * Writes the content of the buffer to the end of the temporary file.
+   *
+   * @throws java.io.IOException if the buffer could not be written
+   */
+  private void writeBuffer() throws IOException {
+    this.buffer.flip();
+
+    while (this.buffer.hasRemaining()) {
+      this.size += this.channel.write(this.buffer, this.size);
+    }
+  }
+
+
+  /**
+   * Retrieves content.
+   *
+   * @param offset the position of the content in the store
+   *
+   * @return the content
+   *
+   * @throws java.io.IOException if the content could not be read
+   */
+  public synchronized String load(long offset) throws IOException {
+    char[] chars = new char[this.getLength(offset)];
+    this.read(offset + 4, chars, 0, chars.length);
+    return new String(chars);
+  }
+
+
+  /**
+   * Returns a reader which retrieves content in chunks.
+   *
+   * @param offset the position of the content in the store
+   *
+   * @return the reader
+   *
+   * @throws java.io.IOException if the content could not be read
+   */
+  public Reader openReader(final long offset) throws IOException {
+    final int length = this.getLength(offset);
+
+    return new Reader() {
+
+      private int position = 0;
+
+
+      @Override
+      public int read(char[] chars, int index, int count) throws IOException {
+        if (this.position == length) {
+          return -1;
+        }
+
+        count = Math.min(count, length - this.position);
+        XMLContentStore.this.read(offset + 4 + 2L * this.position, chars, index, count);
+        this.position += count;
+        return count;
+      }
+
+
+      @Override
+      public void close() {
+        this.position = length;
+      }
+
+    };
+  }
+
+
+  /**
+   * Returns the length of stored content.
+   *
+   * @param offset the position of the content in the store
+   *
+   * @return the number of characters
+   *
+   * @throws java.io.IOException if the length could not be read
+   */
+  private synchronized int getLength(long offset) throws IOException {
+    this.fillBuffer(offset, 4);
+    return this.buffer.getInt();
+  }
+
+
+  /**
+   * Reads stored characters.
+   *
+   * @param offset the position of the first character in the temporary file
+   * @param chars where to put the characters
+   * @param index the position in the array of the first character
+   * @param count the number of characters
+   *
+   * @throws java.io.IOException if the characters could not be read
+   */
+  private synchronized void read(long offset, char[] chars, int index, int count)
+      throws IOException {
+    while (count > 0) {
+      int size = Math.min(count, CHUNK_SIZE);
+      this.fillBuffer(offset, 2 * size);
+
+      for (int i = 0; i < size; i++) {
+        chars[index++] = this.buffer.getChar();
+      }
+
+      offset += 2 * size;
+      count -= size;
+    }
+  }
+
+
+  /**
+   * Reads bytes from the temporary file into the buffer.
+   *
+   * @param offset the position of the first byte in the temporary file
+   * @param count the number of bytes
+   *
+   * @throws java.io.IOException if the bytes could not be read
+   */
+  private void fillBuffer(long offset, int count) throws IOException {
+    if (this.closed || (this.channel == null)) {
+      throw new IOException("Content store is closed");
+    }
+
+    this.buffer.clear();
+    this.buffer.limit(count);
+
+    while (this.buffer.hasRemaining()) {
+      if (this.channel.read(this.buffer, offset + this.buffer.position()) < 0) {
+        throw new IOException("Unexpected end of content store");
+      }
+    }
+
+    this.buffer.flip();
+  }
+
+
+  /**
+   * Closes the store and deletes its temporary file.
+   *
+   * @throws java.io.IOException if the file could not be closed
+   */
+  public synchronized void close() throws IOException {
+    if (this.closed) {
+      return;
+    }
+
+    this.closed = true;
+
+    if (this.channel != null) {
+      try {
+        this.channel.close();
+      } finally {
+        this.file.delete();
+        this.channel = null;
+        this.file = null;
+      }
+    }
+  }
+
+}
@@ -30,7 +30,13 @@
 package com.sigpwned.picoxml;
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.Enumeration;
 import java.util.Properties;
 import java.util.Vector;
@@ -98,6 +104,18 @@ public class XMLElement implements IXMLElement, Serializable {
   private String content;
 
 
+  /**
+   * The store which keeps long content, or null.
+   */
+  private transient XMLContentStore contentStore;
+
+
+  /**
+   * The position of the content in the content store, or -1 if the content is kept in memory.
+   */
+  private transient long contentOffset;
+
+
   /**
    * The system ID of the source data where this element is located.
    */
@@ -175,6 +193,8 @@ public class XMLElement implements IXMLElement, Serializable {
     }
     this.namespace = namespace;
     this.content = null;
+    this.contentStore = null;
+    this.contentOffset = -1;
     this.lineNr = lineNr;
     this.systemID = systemID;
     this.parent = null;
@@ -186,7 +206,7 @@ public class XMLElement implements IXMLElement, Serializable {
    */
   @Override
   public IXMLElement createPCDataElement() {
-    return new XMLElement();
+    return this.shareContentStore(new XMLElement());
   }
 
 
@@ -197,7 +217,7 @@ public class XMLElement implements IXMLElement, Serializable {
    */
   @Override
   public IXMLElement createElement(String fullName) {
-    return new XMLElement(fullName);
+    return this.shareContentStore(new XMLElement(fullName));
   }
 
 
@@ -210,7 +230,7 @@ public class XMLElement implements IXMLElement, Serializable {
    */
   @Override
   public IXMLElement createElement(String fullName, String systemID, int lineNr) {
-    return new XMLElement(fullName, systemID, lineNr);
+    return this.shareContentStore(new XMLElement(fullName, systemID, lineNr));
   }
 
 
@@ -222,7 +242,7 @@ public class XMLElement implements IXMLElement, Serializable {
    */
   @Override
   public IXMLElement createElement(String fullName, String namespace) {
-    return new XMLElement(fullName, namespace);
+    return this.shareContentStore(new XMLElement(fullName, namespace));
   }
 
 
@@ -236,7 +256,20 @@ public class XMLElement implements IXMLElement, Serializable {
    */
   @Override
   public IXMLElement createElement(String fullName, String namespace, String systemID, int lineNr) {
-    return new XMLElement(fullName, namespace, systemID, lineNr);
+    return this.shareContentStore(new XMLElement(fullName, namespace, systemID, lineNr));
+  }
+
+
+  /**
+   * Lets an element created by this element use the same content store.
+   *
+   * @param elt the new element
+   *
+   * @return the new element
+   */
+  private XMLElement shareContentStore(XMLElement elt) {
+    elt.contentStore = this.contentStore;
+    return elt;
   }
 
 
@@ -252,6 +285,7 @@ public class XMLElement implements IXMLElement, Serializable {
     this.name = null;
     this.namespace = null;
     this.content = null;
+    this.contentStore = null;
     this.systemID = null;
     this.parent = null;
     super.finalize();
@@ -378,7 +412,7 @@ public class XMLElement implements IXMLElement, Serializable {
 
 
   /**
-   * Removes a child element.
+   * Removes a child element. The removed child has no parent anymore.
    *
    * @param child the non-null child to remove.
    */
@@ -387,18 +421,22 @@ public class XMLElement implements IXMLElement, Serializable {
     if (child == null) {
       throw new IllegalArgumentException("child must not be null");
     }
-    this.children.removeElement(child);
+    if (this.children.removeElement(child)) {
+      ((XMLElement) child).parent = null;
+    }
   }
 
 
   /**
-   * Removes the child located at a certain index.
+   * Removes the child located at a certain index. The removed child has no parent anymore.
    *
    * @param index the index of the child, where the first child has index 0.
    */
   @Override
   public void removeChildAtIndex(int index) {
+    XMLElement child = (XMLElement) this.children.elementAt(index);
     this.children.removeElementAt(index);
+    child.parent = null;
   }
 
 
@@ -968,22 +1006,150 @@ public class XMLElement implements IXMLElement, Serializable {
    * case, this method returns null.
    *
    * @return the content.
+   *
+   * @throws java.io.UncheckedIOException if the content is kept in a content store which has been
+   *         closed or could not be read.
    */
   @Override
   public String getContent() {
+    if (this.contentOffset >= 0) {
+      try {
+        return this.contentStore.load(this.contentOffset);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
     return this.content;
   }
 
 
+  /**
+   * Returns a reader which retrieves the #PCDATA content of the element. Content which is kept in
+   * a content store is read in chunks.
+   *
+   * @return the reader, or null if the element has no content.
+   *
+   * @throws java.io.UncheckedIOException if the content is kept in a content store which has been
+   *         closed or could not be read.
+   */
+  @Override
+  public Reader getContentReader() {
+    if (this.contentOffset >= 0) {
+      try {
+        return this.contentStore.openReader(this.contentOffset);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    return (this.content == null) ? null : new StringReader(this.content);
+  }
+
+
   /**
    * Sets the #PCDATA content. It is an error to call this method with a non-null value if there are
-   * child objects.
+   * child objects. Content which is longer than the threshold of the content store is kept in the
+   * store; if it cannot be stored, it is kept in memory.
    *
    * @param content the (possibly null) content.
    */
   @Override
   public void setContent(String content) {
     this.content = content;
+    this.contentOffset = -1;
+
+    if ((content != null) && (this.contentStore != null)
+        && (content.length() > this.contentStore.getThreshold())) {
+      try {
+        this.contentOffset = this.contentStore.store(content);
+        this.content = null;
+      } catch (IOException e) {
+        // keep the content in memory
+      }
+    }
+  }
+
+
+  /**
+   * Takes over the content of another element without retrieving it from the content store.
+   *
+   * @param elt the element whose content to take over.
+   */
+  void takeContent(XMLElement elt) {
+    if ((elt.contentOffset >= 0) && (elt.contentStore == this.contentStore)) {
+      this.content = null;
+      this.contentOffset = elt.contentOffset;
+    } else {
+      this.setContent(elt.getContent());
+    }
+  }
+
+
+  /**
+   * Returns the store which keeps long content.
+   *
+   * @return the content store, or null if all content is kept in memory.
+   */
+  public XMLContentStore getContentStore() {
+    return this.contentStore;
+  }
+
+
+  /**
+   * Sets the store which keeps long content. Elements created by this element use the same store.
+   * The content which has already been set is not moved, except that content kept in the previous
+   * store is loaded back into memory. Once a store is closed, the content of the elements which
+   * use it cannot be retrieved anymore.
+   *
+   * @param store the content store, or null to keep all content in memory.
+   *
+   * @throws java.io.UncheckedIOException if the content is kept in the previous store, which has
+   *         been closed or could not be read.
+   */
+  public void setContentStore(XMLContentStore store) {
+    if (this.contentOffset >= 0) {
+      this.content = this.getContent();
+      this.contentOffset = -1;
+    }
+
+    this.contentStore = store;
+  }
+
+
+  /**
+   * Writes the element to a stream. Content which is kept in a content store is written as well.
+   *
+   * @param out the stream
+   *
+   * @throws java.io.IOException if the element could not be written
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    String saved = this.content;
+
+    if (this.contentOffset >= 0) {
+      this.content = this.contentStore.load(this.contentOffset);
+    }
+
+    try {
+      out.defaultWriteObject();
+    } finally {
+      this.content = saved;
+    }
+  }
+
+
+  /**
+   * Reads the element from a stream. The content is kept in memory.
+   *
+   * @param in the stream
+   *
+   * @throws java.io.IOException if the element could not be read
+   * @throws java.lang.ClassNotFoundException if a class of the element could not be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.contentOffset = -1;
   }
 
 
@@ -0,0 +1,215 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+/**
+ * XMLElementStack holds the elements which have been started but not ended
+ * yet, so that a parser can process nested elements without recursion. The
+ * names of the elements are kept in parallel arrays which only grow when the
+ * data is nested deeper than before.
+ *
+ */
+class XMLElementStack
+{
+
+   /**
+    * The initial number of elements that fit on the stack.
+    */
+   private static final int INITIAL_CAPACITY = 32;
+
+
+   /**
+    * The full names of the elements.
+    */
+   private String[] fullNames;
+
+
+   /**
+    * The names of the elements without namespace prefix.
+    */
+   private String[] names;
+
+
+   /**
+    * The namespace prefixes of the elements.
+    */
+   private String[] prefixes;
+
+
+   /**
+    * The namespace URIs of the elements.
+    */
+   private String[] namespaces;
+
+
+   /**
+    * The number of elements on the stack.
+    */
+   private int size;
+
+
+   /**
+    * Creates an empty stack.
+    */
+   XMLElementStack()
+   {
+      this.fullNames = new String[INITIAL_CAPACITY];
+      this.names = new String[INITIAL_CAPACITY];
+      this.prefixes = new String[INITIAL_CAPACITY];
+      this.namespaces = new String[INITIAL_CAPACITY];
+      this.size = 0;
+   }
+
+
+   /**
+    * Cleans up the object when it's destroyed.
+    */
+   protected void finalize()
+      throws Throwable
+   {
+      this.fullNames = null;
+      this.names = null;
+      this.prefixes = null;
+      this.namespaces = null;
+      super.finalize();
+   }
+
+
+   /**
+    * Removes all elements from the stack.
+    */
+   void clear()
+   {
+      while (this.size > 0) {
+         this.pop();
+      }
+   }
+
+
+   /**
+    * Pushes an element on the stack.
+    *
+    * @param fullName  the full name of the element
+    * @param name      the name of the element without namespace prefix
+    * @param prefix    the namespace prefix, or null
+    * @param namespace the namespace URI, or null
+    */
+   void push(String fullName,
+             String name,
+             String prefix,
+             String namespace)
+   {
+      if (this.size == this.fullNames.length) {
+         this.fullNames = grow(this.fullNames);
+         this.names = grow(this.names);
+         this.prefixes = grow(this.prefixes);
+         this.namespaces = grow(this.namespaces);
+      }
+
+      this.fullNames[this.size] = fullName;
+      this.names[this.size] = name;
+      this.prefixes[this.size] = prefix;
+      this.namespaces[this.size] = namespace;
+      this.size++;
+   }
+
+
+   /**
+    * Returns a copy of an array which is twice as large.
+    *
+    * @param array the array
+    */
+   private static String[] grow(String[] array)
+   {
+      String[] result = new String[array.length * 2];
+      System.arraycopy(array, 0, result, 0, array.length);
+      return result;
+   }
+
+
+   /**
+    * Removes the innermost element from the stack.
+    */
+   void pop()
+   {
+      this.size--;
+      this.fullNames[this.size] = null;
+      this.names[this.size] = null;
+      this.prefixes[this.size] = null;
+      this.namespaces[this.size] = null;
+   }
+
+
+   /**
+    * Returns the number of elements on the stack.
+    */
+   int size()
+   {
+      return this.size;
+   }
+
+
+   /**
+    * Returns the full name of the innermost element.
+    */
+   String getFullName()
+   {
+      return this.fullNames[this.size - 1];
+   }
+
+
+   /**
+    * Returns the name of the innermost element without namespace prefix.
+    */
+   String getName()
+   {
+      return this.names[this.size - 1];
+   }
+
+
+   /**
+    * Returns the namespace prefix of the innermost element.
+    */
+   String getPrefix()
+   {
+      return this.prefixes[this.size - 1];
+   }
+
+
+   /**
+    * Returns the namespace URI of the innermost element.
+    */
+   String getNamespace()
+   {
+      return this.namespaces[this.size - 1];
+   }
+
+}
@@ -43,12 +43,40 @@ public class XMLEntityResolver
    implements IXMLEntityResolver
 {
 
+   /**
+    * For each class of resolver, whether it inherits <code>getEntity</code>
+    * from this class. The lookup is done only once per class.
+    */
+   private static final ClassValue<Boolean> INHERITS_GET_ENTITY
+      = new ClassValue<Boolean>() {
+         protected Boolean computeValue(Class<?> type)
+         {
+            try {
+               Class<?> declaringClass
+                  = type.getMethod("getEntity", IXMLReader.class,
+                                   String.class).getDeclaringClass();
+               return Boolean.valueOf(declaringClass
+                                      == XMLEntityResolver.class);
+            } catch (NoSuchMethodException e) {
+               return Boolean.FALSE; // never happens
+            }
+         }
+      };
+
+
    /**
     * The entities.
     */
    private Hashtable entities;
 
 
+   /**
+    * The replacement texts of the entities which can be inserted literally
+    * into text or an attribute value.
+    */
+   private Hashtable literals;
+
+
    /**
     * Initializes the resolver.
     */
@@ -60,6 +88,12 @@ public class XMLEntityResolver
       this.entities.put("apos", "&#39;");
       this.entities.put("lt", "&#60;");
       this.entities.put("gt", "&#62;");
+      this.literals = new Hashtable();
+      this.literals.put("amp", "&");
+      this.literals.put("quot", "\"");
+      this.literals.put("apos", "'");
+      this.literals.put("lt", "<");
+      this.literals.put("gt", ">");
    }
 
 
@@ -71,6 +105,8 @@ public class XMLEntityResolver
    {
       this.entities.clear();
       this.entities = null;
+      this.literals.clear();
+      this.literals = null;
       super.finalize();
    }
 
@@ -86,6 +122,10 @@ public class XMLEntityResolver
    {
       if (! this.entities.containsKey(name)) {
          this.entities.put(name, value);
+
+         if ((value.indexOf('&') < 0) && (value.indexOf('<') < 0)) {
+            this.literals.put(name, value);
+         }
       }
    }
 
@@ -109,6 +149,9 @@ public class XMLEntityResolver
 
    /**
     * Returns a Java reader containing the value of an entity.
+    * The parser only inserts entities literally, without calling this
+    * method, if it has not been overridden; see
+    * <code>isLiteralExpansionEnabled</code>.
     *
     * @param xmlReader the current XML reader
     * @param name the name of the entity.
@@ -132,6 +175,41 @@ public class XMLEntityResolver
    }
 
 
+   /**
+    * Returns the replacement text of an entity if it can be inserted
+    * literally into text or an attribute value. This is the case for the
+    * predefined entities and for internal entities which contain neither
+    * references nor markup; other entities have to be read through
+    * <code>getEntity</code>.
+    *
+    * @param name the name of the entity.
+    *
+    * @return the replacement text, or null if the entity has no literal
+    *         replacement text.
+    */
+   public String getLiteralEntity(String name)
+   {
+      if (! this.isLiteralExpansionEnabled()) {
+         return null;
+      }
+
+      return (String) this.literals.get(name);
+   }
+
+
+   /**
+    * Returns true if entities may be inserted literally, without calling
+    * <code>getEntity</code>. By default this is only the case if the class
+    * of the resolver does not override <code>getEntity</code>, so that an
+    * overriding method still sees every entity. Subclasses can override
+    * this method to decide otherwise.
+    */
+   protected boolean isLiteralExpansionEnabled()
+   {
+      return INHERITS_GET_ENTITY.get(this.getClass()).booleanValue();
+   }
+
+
    /**
     * Returns true if an entity is external.
     *
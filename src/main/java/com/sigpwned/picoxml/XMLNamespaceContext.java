@@ -0,0 +1,250 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+/**
+ * XMLNamespaceContext keeps track of the namespace prefixes which are in
+ * scope while XML data is parsed. The bindings are kept on a stack: every
+ * element opens a new context, in which the namespaces declared by the
+ * element are bound, and closing that context undoes these bindings. An
+ * element which declares no namespaces costs nothing more than a mark on
+ * the stack.
+ * <P>
+ * The default namespace is bound to the <code>null</code> prefix.
+ *
+ */
+public class XMLNamespaceContext
+{
+
+   /**
+    * The initial size of the stacks.
+    */
+   private static final int INITIAL_CAPACITY = 16;
+
+
+   /**
+    * The prefixes of the bindings, from the oldest to the newest.
+    */
+   private String[] prefixes;
+
+
+   /**
+    * The namespace URIs of the bindings.
+    */
+   private String[] uris;
+
+
+   /**
+    * The number of bindings.
+    */
+   private int size;
+
+
+   /**
+    * The number of bindings when each of the open contexts was opened.
+    */
+   private int[] marks;
+
+
+   /**
+    * The number of open contexts.
+    */
+   private int depth;
+
+
+   /**
+    * Creates an empty namespace context.
+    */
+   public XMLNamespaceContext()
+   {
+      this.prefixes = new String[INITIAL_CAPACITY];
+      this.uris = new String[INITIAL_CAPACITY];
+      this.marks = new int[INITIAL_CAPACITY];
+      this.size = 0;
+      this.depth = 0;
+   }
+
+
+   /**
+    * Cleans up the object when it's destroyed.
+    */
+   protected void finalize()
+      throws Throwable
+   {
+      this.prefixes = null;
+      this.uris = null;
+      this.marks = null;
+      super.finalize();
+   }
+
+
+   /**
+    * Removes all bindings and closes all contexts.
+    */
+   public void reset()
+   {
+      for (int i = 0; i < this.size; i++) {
+         this.prefixes[i] = null;
+         this.uris[i] = null;
+      }
+
+      this.size = 0;
+      this.depth = 0;
+   }
+
+
+   /**
+    * Opens a new context, e.g. when an element is started.
+    */
+   public void pushContext()
+   {
+      if (this.depth == this.marks.length) {
+         int[] newMarks = new int[this.depth * 2];
+         System.arraycopy(this.marks, 0, newMarks, 0, this.depth);
+         this.marks = newMarks;
+      }
+
+      this.marks[this.depth++] = this.size;
+   }
+
+
+   /**
+    * Closes the current context and undoes the bindings made in it.
+    */
+   public void popContext()
+   {
+      if (this.depth == 0) {
+         throw new IllegalStateException("no open context");
+      }
+
+      int mark = this.marks[--this.depth];
+
+      while (this.size > mark) {
+         this.size--;
+         this.prefixes[this.size] = null;
+         this.uris[this.size] = null;
+      }
+   }
+
+
+   /**
+    * Returns the number of open contexts.
+    *
+    * @return the number of open contexts
+    */
+   public int getDepth()
+   {
+      return this.depth;
+   }
+
+
+   /**
+    * Binds a prefix to a namespace in the current context.
+    *
+    * @param prefix the prefix, or null for the default namespace
+    * @param uri    the namespace URI
+    */
+   public void declarePrefix(String prefix,
+                             String uri)
+   {
+      if (this.size == this.prefixes.length) {
+         String[] newPrefixes = new String[this.size * 2];
+         String[] newURIs = new String[this.size * 2];
+         System.arraycopy(this.prefixes, 0, newPrefixes, 0, this.size);
+         System.arraycopy(this.uris, 0, newURIs, 0, this.size);
+         this.prefixes = newPrefixes;
+         this.uris = newURIs;
+      }
+
+      this.prefixes[this.size] = prefix;
+      this.uris[this.size] = uri;
+      this.size++;
+   }
+
+
+   /**
+    * Returns the namespace URI to which a prefix is bound.
+    *
+    * @param prefix the prefix, or null for the default namespace
+    *
+    * @return the namespace URI, or null if the prefix is not bound
+    */
+   public String getNamespaceURI(String prefix)
+   {
+      for (int i = this.size - 1; i >= 0; i--) {
+         String p = this.prefixes[i];
+
+         if ((p == prefix) || ((p != null) && p.equals(prefix))) {
+            return this.uris[i];
+         }
+      }
+
+      return null;
+   }
+
+
+   /**
+    * Returns the URI of the default namespace.
+    *
+    * @return the namespace URI, or null if there is no default namespace
+    */
+   public String getDefaultNamespace()
+   {
+      return this.getNamespaceURI(null);
+   }
+
+
+   /**
+    * Returns the number of prefixes bound in the current context.
+    *
+    * @return the number of prefixes
+    */
+   public int getDeclaredPrefixCount()
+   {
+      return (this.depth == 0) ? this.size
+                               : (this.size - this.marks[this.depth - 1]);
+   }
+
+
+   /**
+    * Returns a prefix bound in the current context.
+    *
+    * @param index the index of the binding, between 0 and
+    *              getDeclaredPrefixCount() - 1
+    *
+    * @return the prefix, or null for the default namespace
+    */
+   public String getDeclaredPrefix(int index)
+   {
+      return this.prefixes[this.size - this.getDeclaredPrefixCount() + index];
+   }
+
+}
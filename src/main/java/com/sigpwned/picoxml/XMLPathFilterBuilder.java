@@ -0,0 +1,730 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+import java.io.Reader;
+
+
+/**
+ * XMLPathFilterBuilder is a builder which only creates the elements of the
+ * subtrees that match one of a set of paths. Everything else is discarded
+ * while the data is parsed, and elements which cannot lead to a match are
+ * skipped by the parser.
+ * <P>
+ * A path consists of steps, each preceded by <code>/</code> for a child or
+ * <code>//</code> for a descendant. A step is the local name of an element
+ * or <code>*</code>, optionally followed by a predicate
+ * <code>[@name]</code> or <code>[@name='value']</code> on the local name of
+ * an attribute. Examples are <code>/feed/entry/title</code> and
+ * <code>//price[@currency]</code>.
+ * <P>
+ * The result is the root element, without its content. The matching
+ * subtrees are added as its children, or, if ancestors are kept, as
+ * children of copies of their ancestors which carry the attributes but no
+ * text.
+ *
+ * @see com.sigpwned.picoxml.StdXMLBuilder
+ *
+ */
+public class XMLPathFilterBuilder
+   extends StdXMLBuilder
+   implements IXMLSkippingBuilder
+{
+
+   /**
+    * The element name of each step, or null for any element.
+    */
+   private String[] stepNames;
+
+
+   /**
+    * True for each step which matches descendants instead of children.
+    */
+   private boolean[] stepDescendants;
+
+
+   /**
+    * The attribute name of the predicate of each step, or null.
+    */
+   private String[] stepAttributes;
+
+
+   /**
+    * The attribute value of the predicate of each step, or null.
+    */
+   private String[] stepValues;
+
+
+   /**
+    * True for each step which is the last step of its path.
+    */
+   private boolean[] stepLasts;
+
+
+   /**
+    * True if the ancestors of matching elements are kept.
+    */
+   private boolean keepAncestors;
+
+
+   /**
+    * The number of open elements.
+    */
+   private int depth;
+
+
+   /**
+    * The depth of the matching element being built, or 0.
+    */
+   private int matchDepth;
+
+
+   /**
+    * The steps to match next by the children of the open element at each
+    * depth.
+    */
+   private int[][] states;
+
+
+   /**
+    * The number of steps in <code>states</code> at each depth.
+    */
+   private int[] stateCounts;
+
+
+   /**
+    * True for each open element which is part of the tree.
+    */
+   private boolean[] kept;
+
+
+   /**
+    * True for each open element which contains a match.
+    */
+   private boolean[] found;
+
+
+   /**
+    * The start of the element whose attributes are being read: the name,
+    * the prefix, the namespace URI and the system ID.
+    */
+   private String[] pendingElement;
+
+
+   /**
+    * The line number of the element whose attributes are being read.
+    */
+   private int pendingLineNr;
+
+
+   /**
+    * The key, prefix, namespace URI, value and type of the attributes of
+    * the element whose attributes are being read.
+    */
+   private String[] pendingAttributes;
+
+
+   /**
+    * The number of attributes in <code>pendingAttributes</code>.
+    */
+   private int pendingAttributeCount;
+
+
+   /**
+    * Creates the builder. The ancestors of matching elements are not kept.
+    *
+    * @param paths the paths of the elements to build.
+    */
+   public XMLPathFilterBuilder(String[] paths)
+   {
+      this(paths, false);
+   }
+
+
+   /**
+    * Creates the builder.
+    *
+    * @param paths         the paths of the elements to build.
+    * @param keepAncestors true if the ancestors of matching elements have to
+    *                      be kept.
+    */
+   public XMLPathFilterBuilder(String[] paths,
+                               boolean  keepAncestors)
+   {
+      this(paths, keepAncestors, new XMLElement());
+   }
+
+
+   /**
+    * Creates the builder.
+    *
+    * @param paths         the paths of the elements to build.
+    * @param keepAncestors true if the ancestors of matching elements have to
+    *                      be kept.
+    * @param prototype     the prototype to use when building the tree.
+    *
+    * @throws java.lang.IllegalArgumentException
+    *     if a path is not valid.
+    */
+   public XMLPathFilterBuilder(String[]    paths,
+                               boolean     keepAncestors,
+                               IXMLElement prototype)
+   {
+      super(prototype);
+      this.keepAncestors = keepAncestors;
+      this.compile(paths);
+      this.states = new int[16][];
+      this.stateCounts = new int[16];
+      this.kept = new boolean[16];
+      this.found = new boolean[16];
+      this.pendingElement = new String[4];
+      this.pendingAttributes = new String[40];
+   }
+
+
+   /**
+    * Cleans up the object when it's destroyed.
+    */
+   protected void finalize()
+      throws Throwable
+   {
+      this.stepNames = null;
+      this.stepDescendants = null;
+      this.stepAttributes = null;
+      this.stepValues = null;
+      this.stepLasts = null;
+      this.states = null;
+      this.stateCounts = null;
+      this.kept = null;
+      this.found = null;
+      this.pendingElement = null;
+      this.pendingAttributes = null;
+      super.finalize();
+   }
+
+
+   /**
+    * Compiles the paths into steps. The steps of a path are stored one after
+    * the other.
+    *
+    * @param paths the paths.
+    *
+    * @throws java.lang.IllegalArgumentException
+    *     if a path is not valid.
+    */
+   private void compile(String[] paths)
+   {
+      this.stepNames = null;
+      int count = this.scanSteps(paths);
+      this.stepNames = new String[count];
+      this.stepDescendants = new boolean[count];
+      this.stepAttributes = new String[count];
+      this.stepValues = new String[count];
+      this.stepLasts = new boolean[count];
+      this.scanSteps(paths);
+   }
+
+
+   /**
+    * Scans the steps of the paths. Once the step arrays have been
+    * allocated, the steps are also stored in them.
+    *
+    * @param paths the paths.
+    *
+    * @return the number of steps.
+    *
+    * @throws java.lang.IllegalArgumentException
+    *     if a path is not valid.
+    */
+   private int scanSteps(String[] paths)
+   {
+      int count = 0;
+
+      for (int i = 0; i < paths.length; i++) {
+         String path = paths[i];
+         int index = 0;
+
+         if (path.length() == 0) {
+            throw new IllegalArgumentException("Invalid path: " + path);
+         }
+
+         while (index < path.length()) {
+            if (path.charAt(index) != '/') {
+               throw new IllegalArgumentException("Invalid path: " + path);
+            }
+
+            index++;
+            boolean descendant = path.startsWith("/", index);
+
+            if (descendant) {
+               index++;
+            }
+
+            int end = index;
+
+            while ((end < path.length()) && (path.charAt(end) != '/')
+                   && (path.charAt(end) != '[')) {
+               end++;
+            }
+
+            String name = path.substring(index, end);
+            String attribute = null;
+            String value = null;
+
+            if (name.length() == 0) {
+               throw new IllegalArgumentException("Invalid path: " + path);
+            }
+
+            if (end < path.length() && (path.charAt(end) == '[')) {
+               int close = path.indexOf(']', end);
+
+               if ((close < 0) || (! path.startsWith("[@", end))) {
+                  throw new IllegalArgumentException("Invalid path: " + path);
+               }
+
+               attribute = path.substring(end + 2, close);
+               int equals = attribute.indexOf('=');
+
+               if (equals >= 0) {
+                  value = attribute.substring(equals + 1);
+                  attribute = attribute.substring(0, equals);
+
+                  if ((value.length() < 2)
+                      || ((value.charAt(0) != '\'')
+                          && (value.charAt(0) != '"'))
+                      || (value.charAt(value.length() - 1)
+                          != value.charAt(0))) {
+                     throw new IllegalArgumentException("Invalid path: "
+                                                        + path);
+                  }
+
+                  value = value.substring(1, value.length() - 1);
+               }
+
+               end = close + 1;
+            }
+
+            if (this.stepNames != null) {
+               this.stepNames[count] = name.equals("*") ? null : name;
+               this.stepDescendants[count] = descendant;
+               this.stepAttributes[count] = attribute;
+               this.stepValues[count] = value;
+               this.stepLasts[count] = (end == path.length());
+            }
+
+            count++;
+            index = end;
+         }
+      }
+
+      return count;
+   }
+
+
+   /**
+    * This method is called before the parser starts processing its input.
+    *
+    * @param systemID the system ID of the XML data source.
+    * @param lineNr   the line on which the parsing starts.
+    */
+   public void startBuilding(String systemID,
+                             int    lineNr)
+   {
+      super.startBuilding(systemID, lineNr);
+      this.depth = 0;
+      this.matchDepth = 0;
+      int[] initial = this.getStates(0);
+      int count = 0;
+
+      for (int i = 0; i < this.stepLasts.length; i++) {
+         if ((i == 0) || this.stepLasts[i - 1]) {
+            initial[count++] = i;
+         }
+      }
+
+      this.stateCounts[0] = count;
+   }
+
+
+   /**
+    * Returns true if an element cannot contain a match, so it can be
+    * skipped. The root element is never skipped.
+    *
+    * @param name       the name of the element.
+    * @param nsPrefix   the prefix used to identify the namespace.
+    * @param nsURI      the URI associated with the namespace.
+    *
+    * @return true if the element has to be skipped.
+    */
+   public boolean skipElement(String name,
+                              String nsPrefix,
+                              String nsURI)
+   {
+      if ((this.matchDepth > 0) || (this.depth == 0)) {
+         return false;
+      }
+
+      int[] current = this.states[this.depth];
+
+      for (int i = 0; i < this.stateCounts[this.depth]; i++) {
+         int step = current[i];
+
+         if (this.stepDescendants[step] || this.matchesName(step, name)) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+
+   /**
+    * This method is called when a new XML element is encountered. Unless
+    * the element is part of a match, it is only added to the tree once its
+    * attributes are known.
+    *
+    * @param name       the name of the element.
+    * @param nsPrefix   the prefix used to identify the namespace.
+    * @param nsURI      the URI associated with the namespace.
+    * @param systemID   the system ID of the XML data source.
+    * @param lineNr     the line in the source where the element starts.
+    */
+   public void startElement(String name,
+                            String nsPrefix,
+                            String nsURI,
+                            String systemID,
+                            int    lineNr)
+   {
+      this.depth++;
+
+      if (this.matchDepth > 0) {
+         super.startElement(name, nsPrefix, nsURI, systemID, lineNr);
+         return;
+      }
+
+      if (this.depth == this.kept.length) {
+         this.grow();
+      }
+
+      this.pendingElement[0] = name;
+      this.pendingElement[1] = nsPrefix;
+      this.pendingElement[2] = nsURI;
+      this.pendingElement[3] = systemID;
+      this.pendingLineNr = lineNr;
+      this.pendingAttributeCount = 0;
+   }
+
+
+   /**
+    * This method is called when a new attribute of an XML element is
+    * encountered.
+    *
+    * @param key        the key (name) of the attribute.
+    * @param nsPrefix   the prefix used to identify the namespace.
+    * @param nsURI      the URI associated with the namespace.
+    * @param value      the value of the attribute.
+    * @param type       the type of the attribute.
+    *
+    * @throws java.lang.Exception
+    *     If an exception occurred while processing the event.
+    */
+   public void addAttribute(String key,
+                            String nsPrefix,
+                            String nsURI,
+                            String value,
+                            String type)
+      throws Exception
+   {
+      if (this.matchDepth > 0) {
+         super.addAttribute(key, nsPrefix, nsURI, value, type);
+         return;
+      }
+
+      int index = this.pendingAttributeCount * 5;
+
+      for (int i = 0; i < index; i += 5) {
+         if (key.equals(this.pendingAttributes[i])
+             && ((nsPrefix == null) ? (this.pendingAttributes[i + 1] == null)
+                                    : nsPrefix.equals(
+                                         this.pendingAttributes[i + 1]))) {
+            throw new XMLParseException(this.pendingElement[3],
+                                        this.pendingLineNr,
+                                        "Duplicate attribute: " + key);
+         }
+      }
+
+      if (index == this.pendingAttributes.length) {
+         String[] attributes = new String[index * 2];
+         System.arraycopy(this.pendingAttributes, 0, attributes, 0, index);
+         this.pendingAttributes = attributes;
+      }
+
+      this.pendingAttributes[index] = key;
+      this.pendingAttributes[index + 1] = nsPrefix;
+      this.pendingAttributes[index + 2] = nsURI;
+      this.pendingAttributes[index + 3] = value;
+      this.pendingAttributes[index + 4] = type;
+      this.pendingAttributeCount++;
+   }
+
+
+   /**
+    * This method is called when the attributes of an XML element have been
+    * processed. The paths are matched against the element, which is added
+    * to the tree if it matches or if it may be an ancestor of a match that
+    * has to be kept.
+    *
+    * @param name       the name of the element.
+    * @param nsPrefix   the prefix used to identify the namespace.
+    * @param nsURI      the URI associated with the namespace.
+    */
+   public void elementAttributesProcessed(String name,
+                                          String nsPrefix,
+                                          String nsURI)
+   {
+      if (this.matchDepth > 0) {
+         super.elementAttributesProcessed(name, nsPrefix, nsURI);
+         return;
+      }
+
+      int[] parent = this.states[this.depth - 1];
+      int[] next = this.getStates(this.depth);
+      int count = 0;
+      boolean matched = false;
+
+      for (int i = 0; i < this.stateCounts[this.depth - 1]; i++) {
+         int step = parent[i];
+
+         if (this.stepDescendants[step]) {
+            count = this.addState(next, count, step);
+         }
+
+         if (this.matchesName(step, name) && this.matchesAttributes(step)) {
+            if (this.stepLasts[step]) {
+               matched = true;
+            } else {
+               count = this.addState(next, count, step + 1);
+            }
+         }
+      }
+
+      this.stateCounts[this.depth] = count;
+      this.found[this.depth] = false;
+
+      if (matched) {
+         this.matchDepth = this.depth;
+      }
+
+      this.kept[this.depth] = matched || this.keepAncestors
+                              || (this.depth == 1);
+
+      if (this.kept[this.depth]) {
+         super.startElement(this.pendingElement[0], this.pendingElement[1],
+                            this.pendingElement[2], this.pendingElement[3],
+                            this.pendingLineNr);
+
+         IXMLElement elt = this.getCurrentElement();
+
+         for (int i = 0; i < this.pendingAttributeCount * 5; i += 5) {
+            String key = this.pendingAttributes[i];
+            String prefix = this.pendingAttributes[i + 1];
+
+            if (prefix == null) {
+               elt.setAttribute(key, this.pendingAttributes[i + 3]);
+            } else {
+               elt.setAttribute(prefix + ':' + key,
+                                this.pendingAttributes[i + 2],
+                                this.pendingAttributes[i + 3]);
+            }
+         }
+
+         super.elementAttributesProcessed(name, nsPrefix, nsURI);
+      }
+   }
+
+
+   /**
+    * This method is called when the end of an XML elemnt is encountered.
+    * An ancestor which does not contain a match is removed from the tree.
+    *
+    * @param name       the name of the element.
+    * @param nsPrefix   the prefix used to identify the namespace.
+    * @param nsURI      the URI associated with the namespace.
+    */
+   public void endElement(String name,
+                          String nsPrefix,
+                          String nsURI)
+   {
+      if (this.matchDepth > 0) {
+         super.endElement(name, nsPrefix, nsURI);
+
+         if (this.depth == this.matchDepth) {
+            this.matchDepth = 0;
+            this.found[this.depth - 1] = true;
+         }
+      } else {
+         if (this.kept[this.depth]) {
+            IXMLElement elt = this.getCurrentElement();
+            super.endElement(name, nsPrefix, nsURI);
+
+            if ((! this.found[this.depth]) && (this.depth > 1)) {
+               elt.getParent().removeChild(elt);
+            }
+         }
+
+         if (this.found[this.depth]) {
+            this.found[this.depth - 1] = true;
+         }
+      }
+
+      this.depth--;
+   }
+
+
+   /**
+    * This method is called when a PCDATA element is encountered. The data
+    * is only added to the tree inside a matching element.
+    *
+    * @param reader   the Java reader from which you can retrieve the data.
+    * @param systemID the system ID of the XML data source.
+    * @param lineNr   the line in the source where the element starts.
+    */
+   public void addPCData(Reader reader,
+                         String systemID,
+                         int    lineNr)
+   {
+      if (this.matchDepth > 0) {
+         super.addPCData(reader, systemID, lineNr);
+      }
+   }
+
+
+   /**
+    * Returns true if the element name of a step matches a name.
+    *
+    * @param step the step.
+    * @param name the name of the element.
+    */
+   private boolean matchesName(int    step,
+                               String name)
+   {
+      String stepName = this.stepNames[step];
+      return (stepName == null) || stepName.equals(name);
+   }
+
+
+   /**
+    * Returns true if the predicate of a step matches the attributes of the
+    * element whose attributes have been read.
+    *
+    * @param step the step.
+    */
+   private boolean matchesAttributes(int step)
+   {
+      String attribute = this.stepAttributes[step];
+
+      if (attribute == null) {
+         return true;
+      }
+
+      for (int i = 0; i < this.pendingAttributeCount * 5; i += 5) {
+         if (attribute.equals(this.pendingAttributes[i])) {
+            String value = this.stepValues[step];
+            return (value == null)
+                   || value.equals(this.pendingAttributes[i + 3]);
+         }
+      }
+
+      return false;
+   }
+
+
+   /**
+    * Adds a step to a set of steps, unless it is already in it.
+    *
+    * @param states the set of steps.
+    * @param count  the number of steps in the set.
+    * @param step   the step to add.
+    *
+    * @return the new number of steps in the set.
+    */
+   private int addState(int[] states,
+                        int   count,
+                        int   step)
+   {
+      for (int i = 0; i < count; i++) {
+         if (states[i] == step) {
+            return count;
+         }
+      }
+
+      states[count] = step;
+      return count + 1;
+   }
+
+
+   /**
+    * Returns the array which holds the steps for the children of the
+    * element at a depth.
+    *
+    * @param depth the depth.
+    */
+   private int[] getStates(int depth)
+   {
+      if (this.states[depth] == null) {
+         this.states[depth] = new int[this.stepLasts.length];
+      }
+
+      return this.states[depth];
+   }
+
+
+   /**
+    * Doubles the maximum depth of the open elements.
+    */
+   private void grow()
+   {
+      int size = this.kept.length * 2;
+      int[][] states = new int[size][];
+      int[] stateCounts = new int[size];
+      boolean[] kept = new boolean[size];
+      boolean[] found = new boolean[size];
+      System.arraycopy(this.states, 0, states, 0, this.kept.length);
+      System.arraycopy(this.stateCounts, 0, stateCounts, 0, this.kept.length);
+      System.arraycopy(this.kept, 0, kept, 0, this.kept.length);
+      System.arraycopy(this.found, 0, found, 0, this.kept.length);
+      this.states = states;
+      this.stateCounts = stateCounts;
+      this.kept = kept;
+      this.found = found;
+   }
+
+}
@@ -0,0 +1,1404 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ *
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+import java.io.CharArrayReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+
+/**
+ * XMLPushParser is a non-blocking parser which is fed with the XML data as
+ * it arrives, e.g. from a NIO channel. Every call to {@link #feed} decodes
+ * the bytes it is given and reports all the markup which is complete to the
+ * builder; an incomplete tag or text at the end of the chunk is kept until
+ * the next chunk arrives. No thread is blocked waiting for data.
+ * <P>
+ * The encoding is detected like StdXMLReader does. The data is not
+ * validated. The entities declared in the internal subset of the document
+ * type declaration can be used if their replacement text contains neither
+ * references nor markup; the external subset is never read, as that would
+ * block, and references to any other entity are reported as errors.
+ * StdXMLParser has to be used for documents which need these.
+ *
+ */
+public class XMLPushParser {
+
+  /**
+   * The maximum number of bytes which are buffered to detect the encoding.
+   */
+  private static final int PROLOG_SIZE = 1024;
+
+
+  /**
+   * The initial size of the character buffer.
+   */
+  private static final int BUFFER_SIZE = 8192;
+
+
+  /**
+   * The maximum number of bytes of an incomplete character which are kept
+   * between two chunks.
+   */
+  private static final int MAX_CHAR_SIZE = 16;
+
+
+  /**
+   * The builder which creates the logical structure of the XML data.
+   */
+  private IXMLBuilder builder;
+
+
+  /**
+   * The builder if it receives text as character slices, or null.
+   */
+  private IXMLCharacterBuilder characterBuilder;
+
+
+  /**
+   * The system ID of the XML data.
+   */
+  private String systemID;
+
+
+  /**
+   * The bytes which have been buffered to detect the encoding, or null if
+   * the encoding has been detected.
+   */
+  private byte[] prolog;
+
+
+  /**
+   * The number of bytes in the prolog.
+   */
+  private int prologLength;
+
+
+  /**
+   * The decoder, or null if the encoding has not been detected yet.
+   */
+  private CharsetDecoder decoder;
+
+
+  /**
+   * The bytes of an incomplete character at the end of the previous chunk.
+   */
+  private byte[] partialChar;
+
+
+  /**
+   * The number of bytes in partialChar.
+   */
+  private int partialCharLength;
+
+
+  /**
+   * The decoded characters which have not been parsed yet, starting at
+   * <code>position</code>.
+   */
+  private char[] chars;
+
+
+  /**
+   * The position of the first character which has not been parsed.
+   */
+  private int position;
+
+
+  /**
+   * The position after the last decoded character.
+   */
+  private int limit;
+
+
+  /**
+   * True if the last decoded character was a carriage return.
+   */
+  private boolean afterCR;
+
+
+  /**
+   * The number of characters of the markup or text at
+   * <code>position</code> which have already been searched for its end.
+   */
+  private int scanned;
+
+
+  /**
+   * The quote of the attribute value in which the search for the end of
+   * the markup at <code>position</code> stopped, or 0.
+   */
+  private char quote;
+
+
+  /**
+   * The nesting level of brackets in which the search for the end of the
+   * markup at <code>position</code> stopped.
+   */
+  private int brackets;
+
+
+  /**
+   * The line number of the character at <code>position</code>.
+   */
+  private int lineNr;
+
+
+  /**
+   * The elements which have been started but not ended yet.
+   */
+  private XMLElementStack elements;
+
+
+  /**
+   * The symbol table for element and attribute names.
+   */
+  private XMLSymbolTable symbols;
+
+
+  /**
+   * The entity resolver supplying the replacement text of entities.
+   */
+  private XMLEntityResolver entityResolver;
+
+
+  /**
+   * The attributes of the element being processed.
+   */
+  private XMLAttributeBuffer attributes;
+
+
+  /**
+   * The namespaces which are in scope.
+   */
+  private XMLNamespaceContext namespaces;
+
+
+  /**
+   * True if the root element has been started, so the prolog has ended.
+   */
+  private boolean rootStarted;
+
+
+  /**
+   * True if the builder has been told that building has started.
+   */
+  private boolean started;
+
+
+  /**
+   * True if the document has been completely parsed.
+   */
+  private boolean finished;
+
+
+  /**
+   * Creates a new parser.
+   *
+   * @param builder the builder which creates the logical structure of the XML data
+   */
+  public XMLPushParser(IXMLBuilder builder) {
+    this.builder = builder;
+    this.characterBuilder = (builder instanceof IXMLCharacterBuilder)
+        ? (IXMLCharacterBuilder) builder : null;
+    this.systemID = null;
+    this.prolog = new byte[PROLOG_SIZE];
+    this.prologLength = 0;
+    this.decoder = null;
+    this.partialChar = new byte[MAX_CHAR_SIZE];
+    this.partialCharLength = 0;
+    this.chars = new char[BUFFER_SIZE];
+    this.position = 0;
+    this.limit = 0;
+    this.afterCR = false;
+    this.scanned = 0;
+    this.quote = 0;
+    this.brackets = 0;
+    this.lineNr = 1;
+    this.elements = new XMLElementStack();
+    this.symbols = new XMLSymbolTable();
+    this.entityResolver = new XMLEntityResolver();
+    this.attributes = new XMLAttributeBuffer();
+    this.namespaces = new XMLNamespaceContext();
+    this.rootStarted = false;
+    this.started = false;
+    this.finished = false;
+  }
+
+
+  /**
+   * Cleans up the object when it's destroyed.
+   */
+  @Override
+  protected void finalize() throws Throwable {
+    this.builder = null;
+    this.characterBuilder = null;
+    this.prolog = null;
+    this.decoder = null;
+    this.partialChar = null;
+    this.chars = null;
+    this.elements.clear();
+    this.elements = null;
+    this.symbols = null;
+    this.entityResolver = null;
+    this.attributes = null;
+    this.namespaces = null;
+    super.finalize();
+  }
+
+
+  /**
+   * Sets the system ID which is reported to the builder.
+   *
+   * @param systemID the system ID
+   */
+  public void setSystemID(String systemID) {
+    this.systemID = systemID;
+  }
+
+
+  /**
+   * Returns the builder which creates the logical structure of the XML data.
+   *
+   * @return the builder
+   */
+  public IXMLBuilder getBuilder() {
+    return this.builder;
+  }
+
+
+  /**
+   * Sets the symbol table which maps element and attribute names to canonical strings. A table can
+   * be shared by parsers which are not used at the same time.
+   *
+   * @param symbols the non-null symbol table
+   */
+  public void setSymbolTable(XMLSymbolTable symbols) {
+    this.symbols = symbols;
+  }
+
+
+  /**
+   * Returns the symbol table which maps element and attribute names to canonical strings.
+   *
+   * @return the symbol table
+   */
+  public XMLSymbolTable getSymbolTable() {
+    return this.symbols;
+  }
+
+
+  /**
+   * Returns the namespace context, which holds the namespaces in scope while the data is parsed.
+   *
+   * @return the namespace context
+   */
+  public XMLNamespaceContext getNamespaceContext() {
+    return this.namespaces;
+  }
+
+
+  /**
+   * Returns true if the document has been completely parsed, or if the builder stopped the parsing
+   * by throwing an XMLStopParsingException. Any data fed to the parser after that is ignored.
+   *
+   * @return true if the document has been completely parsed
+   */
+  public boolean isFinished() {
+    return this.finished;
+  }
+
+
+  /**
+   * Parses the next chunk of XML data. All the bytes of the buffer are
+   * consumed; the buffer is not used anymore when this method returns.
+   *
+   * @param buffer the chunk of XML data
+   *
+   * @throws net.n3.nanoxml.XMLException if an error occurred parsing the data
+   */
+  public void feed(ByteBuffer buffer) throws XMLException {
+    try {
+      if (this.finished) {
+        buffer.position(buffer.limit());
+        return;
+      }
+
+      if (this.decoder == null) {
+        this.bufferProlog(buffer);
+
+        if (!this.isPrologComplete()) {
+          return;
+        }
+
+        this.startDecoding(false);
+      }
+
+      this.decode(buffer, false);
+      this.parseAvailable(false);
+    } catch (XMLStopParsingException e) {
+      this.finished = true;
+      buffer.position(buffer.limit());
+    } catch (XMLException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new XMLException(e);
+    }
+  }
+
+
+  /**
+   * Signals that all the XML data has been fed to the parser.
+   *
+   * @return the logical structure built by the builder
+   *
+   * @throws net.n3.nanoxml.XMLException if the data is incomplete or could not be parsed
+   */
+  public Object endOfInput() throws XMLException {
+    try {
+      try {
+        if (!this.finished) {
+          if (this.decoder == null) {
+            this.startDecoding(true);
+          } else {
+            this.decode(ByteBuffer.allocate(0), true);
+          }
+
+          this.parseAvailable(true);
+        }
+
+        if (!this.started) {
+          this.startBuilding();
+        }
+      } catch (XMLStopParsingException e) {
+        this.finished = true;
+      }
+
+      return this.builder.getResult();
+    } catch (XMLException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new XMLException(e);
+    }
+  }
+
+
+  /**
+   * Copies the first bytes of the XML data to the prolog buffer.
+   *
+   * @param buffer the chunk of XML data
+   */
+  private void bufferProlog(ByteBuffer buffer) {
+    int size = Math.min(buffer.remaining(), this.prolog.length - this.prologLength);
+    buffer.get(this.prolog, this.prologLength, size);
+    this.prologLength += size;
+  }
+
+
+  /**
+   * Returns true if enough bytes have been buffered to detect the encoding.
+   *
+   * @return true if the encoding can be detected
+   */
+  private boolean isPrologComplete() {
+    byte[] bytes = this.prolog;
+
+    if (this.prologLength == bytes.length) {
+      return true;
+    }
+
+    if (this.prologLength < 4) {
+      return false;
+    }
+
+    if ((bytes[0] != 0x3C) || (bytes[1] != 0x3F) || (bytes[2] != 0x78) || (bytes[3] != 0x6D)) {
+      return true;
+    }
+
+    for (int i = 4; i < this.prologLength; i++) {
+      if (bytes[i] == 0x3E) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+  /**
+   * Detects the encoding from the prolog and decodes the prolog.
+   *
+   * @param endOfInput true if there is no more data
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void startDecoding(boolean endOfInput) throws Exception {
+    String encoding = XMLUtil.detectByteOrder(this.prolog, this.prologLength);
+    int offset = XMLUtil.getByteOrderMarkLength(this.prolog, this.prologLength);
+
+    if (encoding == null) {
+      encoding = XMLUtil.scanEncoding(XMLUtil.scanDeclaration(this.prolog, this.prologLength));
+    }
+
+    Charset charset = (encoding == null) ? null : StdXMLReader.getCharset(encoding);
+
+    if (charset == null) {
+      charset = StdXMLReader.getCharset("UTF-8");
+    } else if (charset.name().equals("UTF-16")) {
+      offset = 0;
+    }
+
+    this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    ByteBuffer bytes = ByteBuffer.wrap(this.prolog, offset, this.prologLength - offset);
+    this.prolog = null;
+    this.decode(bytes, endOfInput);
+  }
+
+
+  /**
+   * Decodes a chunk of XML data. The bytes of a character which is split
+   * between two chunks are kept until the next chunk arrives.
+   *
+   * @param buffer the chunk of XML data
+   * @param endOfInput true if there is no more data
+   */
+  private void decode(ByteBuffer buffer, boolean endOfInput) {
+    this.compact();
+
+    while ((this.partialCharLength > 0) && buffer.hasRemaining()) {
+      this.partialChar[this.partialCharLength++] = buffer.get();
+      ByteBuffer bytes = ByteBuffer.wrap(this.partialChar, 0, this.partialCharLength);
+      this.decodeBytes(bytes, false);
+      this.partialCharLength = bytes.remaining();
+      System.arraycopy(this.partialChar, bytes.position(), this.partialChar, 0,
+          this.partialCharLength);
+    }
+
+    if (this.partialCharLength > 0) {
+      ByteBuffer bytes = ByteBuffer.wrap(this.partialChar, 0, this.partialCharLength);
+      this.partialCharLength = 0;
+      buffer = bytes;
+    }
+
+    this.decodeBytes(buffer, endOfInput);
+
+    if (endOfInput) {
+      for (;;) {
+        this.ensureCapacity(MAX_CHAR_SIZE);
+        CharBuffer out = CharBuffer.wrap(this.chars, this.limit, this.chars.length - this.limit);
+        CoderResult result = this.decoder.flush(out);
+        this.normalizeLineEnds(out.position());
+
+        if (!result.isOverflow()) {
+          break;
+        }
+      }
+    } else if (buffer.hasRemaining()) {
+      int remaining = buffer.remaining();
+      buffer.get(this.partialChar, 0, remaining);
+      this.partialCharLength = remaining;
+    }
+  }
+
+
+  /**
+   * Decodes bytes into the character buffer.
+   *
+   * @param bytes the bytes to decode
+   * @param endOfInput true if there is no more data
+   */
+  private void decodeBytes(ByteBuffer bytes, boolean endOfInput) {
+    for (;;) {
+      int size = (int) (bytes.remaining() * this.decoder.maxCharsPerByte());
+      this.ensureCapacity(size + MAX_CHAR_SIZE);
+      CharBuffer out = CharBuffer.wrap(this.chars, this.limit, this.chars.length - this.limit);
+      CoderResult result = this.decoder.decode(bytes, out, endOfInput);
+      this.normalizeLineEnds(out.position());
+
+      if (!result.isOverflow()) {
+        return;
+      }
+    }
+  }
+
+
+  /**
+   * Normalizes the line ends of the characters which have just been
+   * decoded: CR and CRLF are converted to LF.
+   *
+   * @param end the position after the last decoded character
+   */
+  private void normalizeLineEnds(int end) {
+    char[] chars = this.chars;
+    int dest = this.limit;
+    boolean afterCR = this.afterCR;
+
+    for (int i = this.limit; i < end; i++) {
+      char ch = chars[i];
+
+      if (ch == '\r') {
+        chars[dest++] = '\n';
+        afterCR = true;
+      } else {
+        if ((ch != '\n') || (!afterCR)) {
+          chars[dest++] = ch;
+        }
+
+        afterCR = false;
+      }
+    }
+
+    this.afterCR = afterCR;
+    this.limit = dest;
+  }
+
+
+  /**
+   * Moves the characters which have not been parsed yet to the start of the
+   * character buffer.
+   */
+  private void compact() {
+    if (this.position > 0) {
+      System.arraycopy(this.chars, this.position, this.chars, 0, this.limit - this.position);
+      this.limit -= this.position;
+      this.position = 0;
+    }
+  }
+
+
+  /**
+   * Makes sure that the character buffer can hold more characters.
+   *
+   * @param size the number of characters to add
+   */
+  private void ensureCapacity(int size) {
+    if (this.limit + size > this.chars.length) {
+      char[] chars = new char[Math.max(this.chars.length * 2, this.limit + size)];
+      System.arraycopy(this.chars, 0, chars, 0, this.limit);
+      this.chars = chars;
+    }
+  }
+
+
+  /**
+   * Tells the builder that building has started.
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void startBuilding() throws Exception {
+    this.started = true;
+    this.builder.startBuilding(this.systemID, this.lineNr);
+  }
+
+
+  /**
+   * Parses all the markup and text which is complete.
+   *
+   * @param endOfInput true if there is no more data
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void parseAvailable(boolean endOfInput) throws Exception {
+    if (!this.started) {
+      this.startBuilding();
+    }
+
+    while ((!this.finished) && (this.position < this.limit)) {
+      int end;
+
+      if (this.chars[this.position] == '<') {
+        end = this.findMarkupEnd();
+      } else if ((this.elements.size() == 0)) {
+        this.skipTopLevelWhitespace();
+        continue;
+      } else {
+        end = this.findTextEnd();
+      }
+
+      if (end < 0) {
+        break;
+      }
+
+      if (this.chars[this.position] == '<') {
+        this.processMarkup(end);
+      } else {
+        this.processText(end);
+      }
+
+      this.advance(end);
+    }
+
+    if (endOfInput && (!this.finished)
+        && ((!(this.elements.size() == 0)) || (this.position < this.limit))) {
+      throw new XMLParseException(this.systemID, this.lineAt(this.limit), "Unexpected EOF");
+    }
+  }
+
+
+  /**
+   * Moves to the next markup or text.
+   *
+   * @param end the position after the markup or text which has been parsed
+   */
+  private void advance(int end) {
+    this.lineNr = this.lineAt(end);
+    this.position = end;
+    this.scanned = 0;
+    this.quote = 0;
+    this.brackets = 0;
+  }
+
+
+  /**
+   * Returns the line number of a character which has not been parsed yet.
+   *
+   * @param index the position of the character
+   *
+   * @return the line number
+   */
+  private int lineAt(int index) {
+    int lineNr = this.lineNr;
+
+    for (int i = this.position; i < index; i++) {
+      if (this.chars[i] == '\n') {
+        lineNr++;
+      }
+    }
+
+    return lineNr;
+  }
+
+
+  /**
+   * Skips whitespace outside the root element.
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void skipTopLevelWhitespace() throws Exception {
+    int index = this.position;
+
+    while ((index < this.limit) && (this.chars[index] != '<')) {
+      char ch = this.chars[index];
+
+      if ((ch != ' ') && (ch != '\t') && (ch != '\n')) {
+        this.advance(index);
+        XMLUtil.errorInvalidInput(this.systemID, this.lineNr,
+            "`" + ch + "' (0x" + Integer.toHexString(ch) + ')');
+      }
+
+      index++;
+    }
+
+    this.advance(index);
+  }
+
+
+  /**
+   * Searches the end of the text at the current position.
+   *
+   * @return the position of the &lt; which ends the text, or -1 if the text
+   *         is not complete yet
+   */
+  private int findTextEnd() {
+    for (int i = this.position + this.scanned; i < this.limit; i++) {
+      if (this.chars[i] == '<') {
+        return i;
+      }
+    }
+
+    this.scanned = this.limit - this.position;
+    return -1;
+  }
+
+
+  /**
+   * Searches the end of the markup at the current position.
+   *
+   * @return the position after the markup, or -1 if the markup is not
+   *         complete yet
+   */
+  private int findMarkupEnd() {
+    int start = this.position;
+    int available = this.limit - start;
+
+    if (available < 2) {
+      return -1;
+    }
+
+    switch (this.chars[start + 1]) {
+      case '?':
+        return this.findLiteral("?>", start + 2);
+
+      case '/':
+        return this.findLiteral(">", start + 2);
+
+      case '!':
+        if (available < 4) {
+          return -1;
+        } else if ((this.chars[start + 2] == '-') && (this.chars[start + 3] == '-')) {
+          return this.findLiteral("-->", start + 4);
+        } else if (this.chars[start + 2] == '[') {
+          return this.findLiteral("]]>", start + 3);
+        } else {
+          return this.findDeclarationEnd();
+        }
+
+      default:
+        return this.findTagEnd();
+    }
+  }
+
+
+  /**
+   * Searches a literal which ends the markup at the current position.
+   *
+   * @param literal the literal
+   * @param from the position where to start searching
+   *
+   * @return the position after the literal, or -1 if it has not been found
+   */
+  private int findLiteral(String literal, int from) {
+    int length = literal.length();
+    int last = this.limit - length;
+    char first = literal.charAt(0);
+
+    from = Math.max(from, this.position + this.scanned);
+
+    for (int i = from; i <= last; i++) {
+      if (this.chars[i] == first) {
+        int j = 1;
+
+        while ((j < length) && (this.chars[i + j] == literal.charAt(j))) {
+          j++;
+        }
+
+        if (j == length) {
+          return i + length;
+        }
+      }
+    }
+
+    this.scanned = Math.max(this.scanned, this.limit - this.position - length + 1);
+    return -1;
+  }
+
+
+  /**
+   * Searches the &gt; which ends the start tag at the current position.
+   *
+   * @return the position after the tag, or -1 if the tag is not complete yet
+   */
+  private int findTagEnd() {
+    char quote = this.quote;
+
+    for (int i = this.position + Math.max(this.scanned, 1); i < this.limit; i++) {
+      char ch = this.chars[i];
+
+      if (quote != 0) {
+        if (ch == quote) {
+          quote = 0;
+        }
+      } else if ((ch == '"') || (ch == '\'')) {
+        quote = ch;
+      } else if (ch == '>') {
+        return i + 1;
+      }
+    }
+
+    this.quote = quote;
+    this.scanned = this.limit - this.position;
+    return -1;
+  }
+
+
+  /**
+   * Searches the &gt; which ends the document type declaration at the
+   * current position, skipping the internal subset. Comments in the internal
+   * subset are skipped as if they were quoted with a '-'.
+   *
+   * @return the position after the declaration, or -1 if the declaration is
+   *         not complete yet
+   */
+  private int findDeclarationEnd() {
+    char quote = this.quote;
+    int brackets = this.brackets;
+    int i;
+
+    for (i = this.position + Math.max(this.scanned, 2); i < this.limit; i++) {
+      char ch = this.chars[i];
+
+      if (quote == '-') {
+        if (ch == '-') {
+          if (i + 2 >= this.limit) {
+            break;
+          } else if ((this.chars[i + 1] == '-') && (this.chars[i + 2] == '>')) {
+            quote = 0;
+            i += 2;
+          }
+        }
+      } else if (quote != 0) {
+        if (ch == quote) {
+          quote = 0;
+        }
+      } else if ((ch == '"') || (ch == '\'')) {
+        quote = ch;
+      } else if (ch == '<') {
+        if (i + 3 >= this.limit) {
+          break;
+        } else if (this.matches(i + 1, "!--")) {
+          quote = '-';
+          i += 3;
+        }
+      } else if (ch == '[') {
+        brackets++;
+      } else if (ch == ']') {
+        brackets--;
+      } else if ((ch == '>') && (brackets <= 0)) {
+        return i + 1;
+      }
+    }
+
+    this.quote = quote;
+    this.brackets = brackets;
+    this.scanned = i - this.position;
+    return -1;
+  }
+
+
+  /**
+   * Processes the markup at the current position.
+   *
+   * @param end the position after the markup
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void processMarkup(int end) throws Exception {
+    int start = this.position;
+
+    switch (this.chars[start + 1]) {
+      case '?':
+        this.processPI(end);
+        break;
+
+      case '/':
+        this.processEndTag(end);
+        break;
+
+      case '!':
+        if (this.chars[start + 2] == '[') {
+          this.processCDATA(end);
+        } else if (this.chars[start + 2] == '-') {
+          if (this.chars[start + 3] != '-') {
+            XMLUtil.errorExpectedInput(this.systemID, this.lineNr, "<!--");
+          }
+        } else if (!this.matches(start + 2, "DOCTYPE")) {
+          XMLUtil.errorExpectedInput(this.systemID, this.lineNr, "<!DOCTYPE");
+        } else if (this.rootStarted) {
+          XMLUtil.errorInvalidInput(this.systemID, this.lineNr, "<!DOCTYPE");
+        } else {
+          this.processDocType(end);
+        }
+
+        break;
+
+      default:
+        this.processStartTag(end);
+    }
+  }
+
+
+  /**
+   * Processes the document type declaration at the current position. The entity declarations of
+   * the internal subset are added to the entity resolver; the external subset is not read.
+   *
+   * @param end the position after the declaration
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void processDocType(int end) throws Exception {
+    int start = this.position + 9; // after "<!DOCTYPE"
+    StdXMLReader reader = new StdXMLReader(this.chars, start, end - start);
+    reader.setLocation(this.systemID, this.lineNr);
+    XMLUtil.skipWhitespace(reader, null);
+    XMLUtil.scanIdentifier(reader);
+    XMLUtil.skipWhitespace(reader, null);
+    StringBuffer publicID = new StringBuffer();
+    char ch = reader.read();
+
+    if (ch == 'P') {
+      XMLUtil.scanPublicID(publicID, reader);
+      XMLUtil.skipWhitespace(reader, null);
+      ch = reader.read();
+    } else if (ch == 'S') {
+      XMLUtil.scanSystemID(reader);
+      XMLUtil.skipWhitespace(reader, null);
+      ch = reader.read();
+    }
+
+    if (ch == '[') {
+      new NonValidator().parseDTD(publicID.toString(), reader, this.entityResolver, false);
+      XMLUtil.skipWhitespace(reader, null);
+      ch = reader.read();
+    }
+
+    if (ch != '>') {
+      XMLUtil.errorExpectedInput(reader.getSystemID(), reader.getLineNr(), "`>'");
+    }
+  }
+
+
+  /**
+   * Returns true if the characters at a position match a literal.
+   *
+   * @param index the position of the characters
+   * @param literal the literal
+   *
+   * @return true if the characters match
+   */
+  private boolean matches(int index, String literal) {
+    if (index + literal.length() > this.limit) {
+      return false;
+    }
+
+    for (int i = 0; i < literal.length(); i++) {
+      if (this.chars[index + i] != literal.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+
+  /**
+   * Returns true if a character is whitespace.
+   *
+   * @param ch the character
+   *
+   * @return true if the character is whitespace
+   */
+  private static boolean isWhitespace(char ch) {
+    return (ch == ' ') || (ch == '\t') || (ch == '\n');
+  }
+
+
+  /**
+   * Skips whitespace.
+   *
+   * @param index the position where to start
+   * @param end the position where to stop
+   *
+   * @return the position of the first character which is not whitespace
+   */
+  private int skipWhitespace(int index, int end) {
+    while ((index < end) && isWhitespace(this.chars[index])) {
+      index++;
+    }
+
+    return index;
+  }
+
+
+  /**
+   * Skips an identifier.
+   *
+   * @param index the position where the identifier starts
+   * @param end the position where to stop
+   *
+   * @return the position after the identifier
+   */
+  private int skipIdentifier(int index, int end) {
+    while ((index < end) && XMLUtil.isNameChar(this.chars[index])) {
+      index++;
+    }
+
+    return index;
+  }
+
+
+  /**
+   * Processes a processing instruction.
+   *
+   * @param end the position after the processing instruction
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void processPI(int end) throws Exception {
+    int index = this.skipWhitespace(this.position + 2, end - 2);
+    int targetEnd = this.skipIdentifier(index, end - 2);
+    String target = new String(this.chars, index, targetEnd - index);
+    index = this.skipWhitespace(targetEnd, end - 2);
+
+    if (!target.equalsIgnoreCase("xml")) {
+      Reader reader = new CharArrayReader(this.chars, index, end - 2 - index);
+      this.builder.newProcessingInstruction(target, reader);
+      reader.close();
+    }
+  }
+
+
+  /**
+   * Processes a CDATA section.
+   *
+   * @param end the position after the CDATA section
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void processCDATA(int end) throws Exception {
+    int start = this.position;
+
+    if ((this.elements.size() == 0)) {
+      XMLUtil.errorUnexpectedCDATA(this.systemID, this.lineNr);
+    }
+
+    if ((end - start < 12) || (!this.matches(start + 3, "CDATA["))) {
+      XMLUtil.errorExpectedInput(this.systemID, this.lineNr, "<![[CDATA[");
+    }
+
+    if (this.characterBuilder != null) {
+      this.characterBuilder.addCharacters(this.chars, start + 9, end - start - 12, this.systemID,
+          this.lineAt(start + 9));
+      return;
+    }
+
+    Reader reader = new CharArrayReader(this.chars, start + 9, end - start - 12);
+    this.builder.addPCData(reader, this.systemID, this.lineAt(start + 9));
+    reader.close();
+  }
+
+
+  /**
+   * Processes a start tag. The namespaces declared by the element are bound in a new context of the
+   * namespace context, which is closed when the element ends.
+   *
+   * @param end the position after the tag
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void processStartTag(int end) throws Exception {
+    XMLSymbolTable symbols = this.symbols;
+    XMLAttributeBuffer attributes = this.attributes;
+    int index = this.position + 1;
+    int nameEnd = this.skipIdentifier(index, end);
+    String fullName = symbols.getSymbol(this.chars, index, nameEnd - index);
+    String name = fullName;
+    String prefix = null;
+    int colonIndex = name.indexOf(':');
+
+    if (colonIndex > 0) {
+      prefix = symbols.getSymbol(fullName, 0, colonIndex);
+      name = symbols.getSymbol(fullName, colonIndex + 1, fullName.length() - colonIndex - 1);
+    }
+
+    this.rootStarted = true;
+    attributes.clear();
+    index = this.skipWhitespace(nameEnd, end);
+
+    while ((this.chars[index] != '/') && (this.chars[index] != '>')) {
+      int keyEnd = this.skipIdentifier(index, end);
+      String key = symbols.getSymbol(this.chars, index, keyEnd - index);
+      index = this.skipWhitespace(keyEnd, end);
+
+      if (this.chars[index] != '=') {
+        XMLUtil.errorExpectedInput(this.systemID, this.lineAt(index), "`='");
+      }
+
+      index = this.skipWhitespace(index + 1, end);
+      char delimiter = this.chars[index];
+
+      if ((delimiter != '\'') && (delimiter != '"')) {
+        XMLUtil.errorExpectedInput(this.systemID, this.lineAt(index), "delimited string");
+      }
+
+      int valueEnd = index + 1;
+
+      while ((valueEnd < end) && (this.chars[valueEnd] != delimiter)) {
+        valueEnd++;
+      }
+
+      attributes.add(key, this.decodeText(index + 1, valueEnd, true));
+      index = this.skipWhitespace(valueEnd + 1, end);
+    }
+
+    if ((this.chars[index] == '/') && (index != end - 2)) {
+      XMLUtil.errorExpectedInput(this.systemID, this.lineAt(index + 1), "`>'");
+    }
+
+    XMLNamespaceContext namespaces = this.namespaces;
+    namespaces.pushContext();
+
+    if (attributes.hasReserved()) {
+      for (int i = 0; i < attributes.size(); i++) {
+        if (!attributes.isReserved(i)) {
+          continue;
+        }
+
+        String key = attributes.getName(i);
+        String value = attributes.getValue(i);
+
+        if (key.equals("xmlns")) {
+          namespaces.declarePrefix(null, value);
+        } else if (key.startsWith("xmlns:")) {
+          namespaces.declarePrefix(symbols.getSymbol(key, 6, key.length() - 6), value);
+        }
+      }
+    }
+
+    String namespace = namespaces.getNamespaceURI(prefix);
+    this.builder.startElement(name, prefix, namespace, this.systemID, this.lineAt(end));
+
+    for (int i = 0; i < attributes.size(); i++) {
+      if (attributes.isReserved(i)) {
+        continue;
+      }
+
+      String key = attributes.getName(i);
+      String value = attributes.getValue(i);
+      colonIndex = key.indexOf(':');
+
+      if (colonIndex > 0) {
+        String attPrefix = symbols.getSymbol(key, 0, colonIndex);
+        key = symbols.getSymbol(key, colonIndex + 1, key.length() - colonIndex - 1);
+        this.builder.addAttribute(key, attPrefix, namespaces.getNamespaceURI(attPrefix), value,
+            "CDATA");
+      } else {
+        this.builder.addAttribute(key, null, null, value, "CDATA");
+      }
+    }
+
+    attributes.clear();
+    this.builder.elementAttributesProcessed(name, prefix, namespace);
+
+    if (this.chars[index] == '/') {
+      this.builder.endElement(name, prefix, namespace);
+      namespaces.popContext();
+      this.elementEnded();
+    } else {
+      this.elements.push(fullName, name, prefix, namespace);
+    }
+  }
+
+
+  /**
+   * Processes an end tag and pops the innermost element from the stack of open elements.
+   *
+   * @param end the position after the tag
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void processEndTag(int end) throws Exception {
+    XMLElementStack elements = this.elements;
+    int index = this.skipWhitespace(this.position + 2, end);
+    int nameEnd = this.skipIdentifier(index, end);
+    String str = this.symbols.getSymbol(this.chars, index, nameEnd - index);
+
+    if (elements.size() == 0) {
+      XMLUtil.errorInvalidInput(this.systemID, this.lineNr, "`</" + str + "'");
+    }
+
+    String fullName = elements.getFullName();
+
+    // symbols are only canonical while the table is not full
+    if ((str != fullName) && !str.equals(fullName)) {
+      XMLUtil.errorWrongClosingTag(this.systemID, this.lineAt(nameEnd), elements.getName(), str);
+    }
+
+    if (this.skipWhitespace(nameEnd, end) != end - 1) {
+      XMLUtil.errorClosingTagNotEmpty(this.systemID, this.lineAt(end));
+    }
+
+    this.builder.endElement(elements.getName(), elements.getPrefix(), elements.getNamespace());
+    this.namespaces.popContext();
+    elements.pop();
+    this.elementEnded();
+  }
+
+
+  /**
+   * Checks whether the document is complete after an element has ended.
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void elementEnded() throws Exception {
+    if ((this.elements.size() == 0) && (this.builder.getResult() != null)) {
+      this.finished = true;
+    }
+  }
+
+
+  /**
+   * Processes the text at the current position. Text which consists only of
+   * whitespace is ignored.
+   *
+   * @param end the position after the text
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private void processText(int end) throws Exception {
+    int start = this.position;
+    int contentStart = this.skipWhitespace(start, end);
+
+    if (contentStart == end) {
+      return;
+    }
+
+    boolean literal = true;
+
+    for (int i = start; i < end; i++) {
+      char ch = this.chars[i];
+
+      if ((ch == '&') || ((ch == '\t') && (i < contentStart))) {
+        literal = false;
+        break;
+      }
+    }
+
+    if (literal && (this.characterBuilder != null)) {
+      this.characterBuilder.addCharacters(this.chars, start, end - start, this.systemID,
+          this.lineAt(contentStart));
+      return;
+    }
+
+    Reader reader;
+
+    if (literal) {
+      reader = new CharArrayReader(this.chars, start, end - start);
+    } else {
+      StringBuffer buffer = new StringBuffer(end - start);
+
+      for (int i = start; i < contentStart; i++) {
+        buffer.append((this.chars[i] == '\n') ? '\n' : ' ');
+      }
+
+      buffer.append(this.decodeText(contentStart, end, false));
+
+      if (this.characterBuilder != null) {
+        char[] text = new char[buffer.length()];
+        buffer.getChars(0, text.length, text, 0);
+        this.characterBuilder.addCharacters(text, 0, text.length, this.systemID,
+            this.lineAt(contentStart));
+        return;
+      }
+
+      reader = new StringReader(buffer.toString());
+    }
+
+    this.builder.addPCData(reader, this.systemID, this.lineAt(contentStart));
+    reader.close();
+  }
+
+
+  /**
+   * Decodes the entity references and character references in text or in
+   * an attribute value.
+   *
+   * @param start the position of the first character
+   * @param end the position after the last character
+   * @param attribute true if whitespace has to be normalized as in an attribute value
+   *
+   * @return the decoded text
+   *
+   * @throws java.lang.Exception if something went wrong
+   */
+  private String decodeText(int start, int end, boolean attribute) throws Exception {
+    StringBuffer result = new StringBuffer(end - start);
+
+    for (int i = start; i < end; i++) {
+      char ch = this.chars[i];
+
+      if (ch == '&') {
+        int semicolon = i + 1;
+
+        while ((semicolon < end) && (this.chars[semicolon] != ';')) {
+          semicolon++;
+        }
+
+        if (semicolon == end) {
+          XMLUtil.errorInvalidEntity(this.systemID, this.lineAt(i),
+              new String(this.chars, i + 1, semicolon - i - 1));
+        }
+
+        this.appendEntity(result, i, semicolon);
+        i = semicolon;
+      } else if (attribute && ((ch == '\t') || (ch == '\n'))) {
+        result.append(' ');
+      } else {
+        result.append(ch);
+      }
+    }
+
+    return result.toString();
+  }
+
+
+  /**
+   * Appends the replacement text of an entity or a character reference. The line number is only
+   * computed when the reference is invalid, as <code>lineAt</code> has to scan the buffer.
+   *
+   * @param result where to append the replacement text
+   * @param ampersand the position of the <code>&amp;</code> starting the reference
+   * @param semicolon the position of the <code>;</code> ending the reference
+   *
+   * @throws java.lang.Exception if the entity is not known
+   */
+  private void appendEntity(StringBuffer result, int ampersand, int semicolon) throws Exception {
+    int start = ampersand + 1;
+    int length = semicolon - start;
+
+    if ((length > 0) && (this.chars[start] == '#')) {
+      try {
+        result.append(XMLTokenizer.getCharacter(this.chars, start, length));
+        return;
+      } catch (NumberFormatException e) {
+        // reported below
+      }
+    } else {
+      String value = this.entityResolver.getLiteralEntity(
+          this.symbols.getSymbol(this.chars, start, length));
+
+      if (value != null) {
+        result.append(value);
+        return;
+      }
+    }
+
+    XMLUtil.errorInvalidEntity(this.systemID, this.lineAt(ampersand),
+        new String(this.chars, start, length));
+  }
+
+}
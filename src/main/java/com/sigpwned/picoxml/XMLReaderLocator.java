@@ -0,0 +1,114 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+/**
+ * XMLReaderLocator is the locator of a reader which does not provide one
+ * itself. It only knows the system ID, the public ID and the line number.
+ *
+ */
+class XMLReaderLocator
+   implements IXMLLocator
+{
+
+   /**
+    * The reader.
+    */
+   private IXMLReader reader;
+
+
+   /**
+    * Creates the locator.
+    *
+    * @param reader the reader
+    */
+   XMLReaderLocator(IXMLReader reader)
+   {
+      this.reader = reader;
+   }
+
+
+   /**
+    * Cleans up the object when it's destroyed.
+    */
+   protected void finalize()
+      throws Throwable
+   {
+      this.reader = null;
+      super.finalize();
+   }
+
+
+   /**
+    * Returns the current system ID.
+    */
+   public String getSystemID()
+   {
+      return this.reader.getSystemID();
+   }
+
+
+   /**
+    * Returns the current public ID.
+    */
+   public String getPublicID()
+   {
+      return this.reader.getPublicID();
+   }
+
+
+   /**
+    * Returns the current line number.
+    */
+   public int getLineNr()
+   {
+      return this.reader.getLineNr();
+   }
+
+
+   /**
+    * Returns -1, as columns are not tracked.
+    */
+   public int getColumnNr()
+   {
+      return -1;
+   }
+
+
+   /**
+    * Returns -1, as character offsets are not tracked.
+    */
+   public long getCharacterOffset()
+   {
+      return -1;
+   }
+
+}
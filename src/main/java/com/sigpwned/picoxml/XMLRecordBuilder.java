@@ -0,0 +1,223 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+import java.util.Vector;
+
+
+/**
+ * XMLRecordBuilder is a builder for XML data which consists of many
+ * repeated records, e.g. the children of the root element. Each element at
+ * the record depth is detached from the tree as soon as it ends, so the
+ * records which have been handed out are not kept in memory.
+ * <P>
+ * The records are queued until they are retrieved with
+ * {@link #nextRecord}. A subclass can process them as they end by
+ * overriding {@link #recordEnded} instead.
+ *
+ * @see com.sigpwned.picoxml.XMLRecordIterator
+ *
+ */
+public class XMLRecordBuilder
+   extends StdXMLBuilder
+{
+
+   /**
+    * The depth of the records, where the root element has depth 1.
+    */
+   private int recordDepth;
+
+
+   /**
+    * The number of open elements.
+    */
+   private int depth;
+
+
+   /**
+    * The records which have ended but have not been retrieved yet.
+    */
+   private Vector records;
+
+
+   /**
+    * Creates the builder.
+    *
+    * @param recordDepth the depth of the records, where the root element has
+    *                    depth 1 and its children depth 2.
+    */
+   public XMLRecordBuilder(int recordDepth)
+   {
+      this(recordDepth, new XMLElement());
+   }
+
+
+   /**
+    * Creates the builder.
+    *
+    * @param recordDepth the depth of the records, where the root element has
+    *                    depth 1 and its children depth 2.
+    * @param prototype   the prototype to use when building the tree.
+    *
+    * @throws java.lang.IllegalArgumentException
+    *     if the depth is less than 1.
+    */
+   public XMLRecordBuilder(int         recordDepth,
+                           IXMLElement prototype)
+   {
+      super(prototype);
+
+      if (recordDepth < 1) {
+         throw new IllegalArgumentException("Invalid record depth: "
+                                            + recordDepth);
+      }
+
+      this.recordDepth = recordDepth;
+      this.depth = 0;
+      this.records = new Vector();
+   }
+
+
+   /**
+    * Cleans up the object when it's destroyed.
+    */
+   protected void finalize()
+      throws Throwable
+   {
+      this.records.clear();
+      this.records = null;
+      super.finalize();
+   }
+
+
+   /**
+    * This method is called before the parser starts processing its input.
+    *
+    * @param systemID the system ID of the XML data source.
+    * @param lineNr   the line on which the parsing starts.
+    */
+   public void startBuilding(String systemID,
+                             int    lineNr)
+   {
+      super.startBuilding(systemID, lineNr);
+      this.depth = 0;
+      this.records.clear();
+   }
+
+
+   /**
+    * This method is called when a new XML element is encountered.
+    *
+    * @param name       the name of the element.
+    * @param nsPrefix   the prefix used to identify the namespace.
+    * @param nsURI      the URI associated with the namespace.
+    * @param systemID   the system ID of the XML data source.
+    * @param lineNr     the line in the source where the element starts.
+    */
+   public void startElement(String name,
+                            String nsPrefix,
+                            String nsURI,
+                            String systemID,
+                            int    lineNr)
+   {
+      this.depth++;
+      super.startElement(name, nsPrefix, nsURI, systemID, lineNr);
+   }
+
+
+   /**
+    * This method is called when the end of an XML elemnt is encountered.
+    * A record is detached from its parent and passed to
+    * {@link #recordEnded}.
+    *
+    * @param name       the name of the element.
+    * @param nsPrefix   the prefix used to identify the namespace.
+    * @param nsURI      the URI associated with the namespace.
+    */
+   public void endElement(String name,
+                          String nsPrefix,
+                          String nsURI)
+   {
+      IXMLElement elt = this.getCurrentElement();
+      super.endElement(name, nsPrefix, nsURI);
+
+      if (this.depth == this.recordDepth) {
+         IXMLElement parent = elt.getParent();
+
+         if (parent != null) {
+            parent.removeChild(elt);
+         }
+
+         this.recordEnded(elt);
+      }
+
+      this.depth--;
+   }
+
+
+   /**
+    * This method is called when a record has ended. The default
+    * implementation queues it until it is retrieved.
+    *
+    * @param record the record, which has no parent.
+    */
+   protected void recordEnded(IXMLElement record)
+   {
+      this.records.addElement(record);
+   }
+
+
+   /**
+    * Returns true if there are records which have not been retrieved yet.
+    */
+   public boolean hasRecords()
+   {
+      return ! this.records.isEmpty();
+   }
+
+
+   /**
+    * Retrieves the oldest record which has not been retrieved yet.
+    *
+    * @return the record, or null if there is none.
+    */
+   public IXMLElement nextRecord()
+   {
+      if (this.records.isEmpty()) {
+         return null;
+      }
+
+      IXMLElement record = (IXMLElement) this.records.elementAt(0);
+      this.records.removeElementAt(0);
+      return record;
+   }
+
+}
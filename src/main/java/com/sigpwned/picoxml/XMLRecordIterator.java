@@ -0,0 +1,213 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * XMLRecordIterator iterates over the records of XML data, e.g. the
+ * children of the root element of a feed. The data is read and parsed only
+ * as far as needed to return the next record, so the memory used does not
+ * depend on the size of the data.
+ * <P>
+ * The data is parsed by an {@link com.sigpwned.picoxml.XMLPushParser}, so
+ * only the entities declared in the internal subset of the document type
+ * declaration can be used, and only if their replacement text contains
+ * neither references nor markup. The external subset is not read, and
+ * references to other entities are errors. Data which needs a full DTD has
+ * to be parsed by a {@link com.sigpwned.picoxml.StdXMLParser} with an
+ * {@link com.sigpwned.picoxml.XMLRecordBuilder} which overrides
+ * <code>recordEnded</code> to process the records.
+ * <P>
+ * Errors are thrown as unchecked exceptions: an
+ * {@link java.io.UncheckedIOException} if the data could not be read and an
+ * {@link java.lang.IllegalStateException} wrapping the
+ * {@link com.sigpwned.picoxml.XMLException} if it could not be parsed.
+ *
+ * @see com.sigpwned.picoxml.XMLRecordBuilder
+ *
+ */
+public class XMLRecordIterator
+   implements Iterator<IXMLElement>
+{
+
+   /**
+    * The size of the chunks which are read from the stream.
+    */
+   private static final int BUFFER_SIZE = 8192;
+
+
+   /**
+    * The stream to read the data from, or null if all the data has been
+    * read.
+    */
+   private InputStream stream;
+
+
+   /**
+    * The builder which creates the records.
+    */
+   private XMLRecordBuilder builder;
+
+
+   /**
+    * The parser which is fed with the data.
+    */
+   private XMLPushParser parser;
+
+
+   /**
+    * The buffer for reading from the stream.
+    */
+   private byte[] buffer;
+
+
+   /**
+    * Creates an iterator over the children of the root element.
+    *
+    * @param stream the stream to read the data from.
+    */
+   public XMLRecordIterator(InputStream stream)
+   {
+      this(stream, 2);
+   }
+
+
+   /**
+    * Creates an iterator.
+    *
+    * @param stream      the stream to read the data from. The stream is not
+    *                    closed by the iterator.
+    * @param recordDepth the depth of the records, where the root element has
+    *                    depth 1 and its children depth 2.
+    */
+   public XMLRecordIterator(InputStream stream,
+                            int         recordDepth)
+   {
+      this(stream, new XMLRecordBuilder(recordDepth));
+   }
+
+
+   /**
+    * Creates an iterator.
+    *
+    * @param stream  the stream to read the data from. The stream is not
+    *                closed by the iterator.
+    * @param builder the builder which creates the records.
+    */
+   public XMLRecordIterator(InputStream      stream,
+                            XMLRecordBuilder builder)
+   {
+      this.stream = stream;
+      this.builder = builder;
+      this.parser = new XMLPushParser(builder);
+      this.buffer = new byte[BUFFER_SIZE];
+   }
+
+
+   /**
+    * Cleans up the object when it's destroyed.
+    */
+   protected void finalize()
+      throws Throwable
+   {
+      this.stream = null;
+      this.builder = null;
+      this.parser = null;
+      this.buffer = null;
+      super.finalize();
+   }
+
+
+   /**
+    * Sets the system ID which is reported to the builder.
+    *
+    * @param systemID the system ID.
+    */
+   public void setSystemID(String systemID)
+   {
+      this.parser.setSystemID(systemID);
+   }
+
+
+   /**
+    * Returns true if there is another record. The data is read until the
+    * next record has ended or until the end of the data.
+    */
+   public boolean hasNext()
+   {
+      try {
+         while ((! this.builder.hasRecords()) && (this.stream != null)) {
+            int count = this.stream.read(this.buffer);
+
+            if (count < 0) {
+               this.stream = null;
+               this.parser.endOfInput();
+            } else {
+               this.parser.feed(ByteBuffer.wrap(this.buffer, 0, count));
+
+               if (this.parser.isFinished()) {
+                  this.stream = null;
+               }
+            }
+         }
+      } catch (IOException e) {
+         throw new UncheckedIOException(e);
+      } catch (XMLException e) {
+         throw new IllegalStateException(e.getMessage(), e);
+      }
+
+      return this.builder.hasRecords();
+   }
+
+
+   /**
+    * Returns the next record, which is an element without parent.
+    *
+    * @throws java.util.NoSuchElementException
+    *     if there are no more records.
+    */
+   public IXMLElement next()
+   {
+      if (! this.hasNext()) {
+         throw new NoSuchElementException();
+      }
+
+      return this.builder.nextRecord();
+   }
+
+}
@@ -0,0 +1,62 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+/**
+ * An XMLStopParsingException is thrown by a builder or a validator to stop
+ * the parsing before the end of the data has been reached. The parser then
+ * closes its reader and returns the result which has been built so far.
+ *
+ */
+public class XMLStopParsingException
+   extends XMLException
+{
+
+   /**
+    * Creates a new exception.
+    */
+   public XMLStopParsingException()
+   {
+      super("Parsing stopped");
+   }
+
+
+   /**
+    * Creates a new exception.
+    *
+    * @param msg the message of the exception.
+    */
+   public XMLStopParsingException(String msg)
+   {
+      super(msg);
+   }
+
+}
@@ -0,0 +1,362 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+
+/**
+ * XMLStreamingTextBuilder is a builder which can redirect large text to a
+ * writer instead of keeping it in the tree. As soon as the text of an
+ * element gets longer than a threshold, {@link #openTextWriter} is asked
+ * for a writer; the text read so far and the rest of the text are written
+ * to it, and the writer is closed at the end of the text.
+ * <P>
+ * To keep the memory used bounded, a text chunk size should be set on the
+ * parser, so large text is received in chunks:
+ * <PRE>
+ * parser.setTextChunkSize(8192);
+ * parser.setBuilder(new XMLStreamingTextBuilder(65536) {
+ *    protected Writer openTextWriter(IXMLElement element,
+ *                                    String systemID, int lineNr)
+ *       throws Exception
+ *    {
+ *       return new XMLBase64Writer(new FileOutputStream(...));
+ *    }
+ * });
+ * </PRE>
+ * If the writer cannot be closed, the resulting
+ * {@link java.io.IOException} is thrown as an
+ * {@link java.io.UncheckedIOException}.
+ * <P>
+ * The parser does not tell its builder when parsing fails or stops early,
+ * so a writer may still be open when <I>parse</I> returns. Call
+ * {@link #close} in that case; the writer is also closed when the builder
+ * is used again.
+ *
+ * @see com.sigpwned.picoxml.StdXMLParser#setTextChunkSize
+ * @see com.sigpwned.picoxml.XMLBase64Writer
+ *
+ */
+public class XMLStreamingTextBuilder
+   extends StdXMLBuilder
+   implements IXMLCharacterBuilder
+{
+
+   /**
+    * The number of characters above which text is redirected.
+    */
+   private int threshold;
+
+
+   /**
+    * True if a writer has been asked for the current text.
+    */
+   private boolean writerRequested;
+
+
+   /**
+    * The system ID of the data source of the current text.
+    */
+   private String textSystemID;
+
+
+   /**
+    * The line in the source where the current text starts.
+    */
+   private int textLineNr;
+
+
+   /**
+    * The writer the current text is redirected to, or null.
+    */
+   private Writer writer;
+
+
+   /**
+    * The buffer used to read PCDATA.
+    */
+   private char[] chars;
+
+
+   /**
+    * Creates the builder.
+    *
+    * @param threshold the number of characters above which text is
+    *                  redirected.
+    */
+   public XMLStreamingTextBuilder(int threshold)
+   {
+      this(threshold, new XMLElement());
+   }
+
+
+   /**
+    * Creates the builder.
+    *
+    * @param threshold the number of characters above which text is
+    *                  redirected.
+    * @param prototype the prototype to use when building the tree.
+    */
+   public XMLStreamingTextBuilder(int         threshold,
+                                  IXMLElement prototype)
+   {
+      super(prototype);
+      this.threshold = threshold;
+      this.writerRequested = false;
+      this.writer = null;
+      this.chars = new char[2048];
+   }
+
+
+   /**
+    * Cleans up the object when it's destroyed.
+    */
+   protected void finalize()
+      throws Throwable
+   {
+      this.textSystemID = null;
+      this.writer = null;
+      this.chars = null;
+      super.finalize();
+   }
+
+
+   /**
+    * Returns the writer which the text of an element is redirected to. This
+    * method is called once for each text which gets longer than the
+    * threshold. The default implementation returns null.
+    *
+    * @param element  the element which contains the text.
+    * @param systemID the system ID of the XML data source.
+    * @param lineNr   the line in the source where the text starts.
+    *
+    * @return the writer, or null if the text has to be added to the tree.
+    *
+    * @throws java.lang.Exception
+    *     If the writer could not be opened.
+    */
+   protected Writer openTextWriter(IXMLElement element,
+                                   String      systemID,
+                                   int         lineNr)
+      throws Exception
+   {
+      return null;
+   }
+
+
+   /**
+    * Closes the writer the current text is redirected to, if any.
+    *
+    * @throws java.io.IOException
+    *     If the writer could not be closed.
+    */
+   public void close()
+      throws IOException
+   {
+      Writer w = this.writer;
+      this.writer = null;
+      this.writerRequested = false;
+      this.textSystemID = null;
+
+      if (w != null) {
+         w.close();
+      }
+   }
+
+
+   /**
+    * This method is called before the parser starts processing its input.
+    * A writer left open by a previous parse is closed.
+    *
+    * @param systemID the system ID of the XML data source.
+    * @param lineNr   the line on which the parsing starts.
+    */
+   public void startBuilding(String systemID,
+                             int    lineNr)
+   {
+      this.endText();
+      super.startBuilding(systemID, lineNr);
+   }
+
+
+   /**
+    * This method is called when a processing instruction is encountered.
+    *
+    * @param target the PI target.
+    * @param reader to read the data from the PI.
+    */
+   public void newProcessingInstruction(String target,
+                                        Reader reader)
+   {
+      this.endText();
+      super.newProcessingInstruction(target, reader);
+   }
+
+
+   /**
+    * This method is called when a new XML element is encountered.
+    *
+    * @param name       the name of the element.
+    * @param nsPrefix   the prefix used to identify the namespace.
+    * @param nsURI      the URI associated with the namespace.
+    * @param systemID   the system ID of the XML data source.
+    * @param lineNr     the line in the source where the element starts.
+    */
+   public void startElement(String name,
+                            String nsPrefix,
+                            String nsURI,
+                            String systemID,
+                            int    lineNr)
+   {
+      this.endText();
+      super.startElement(name, nsPrefix, nsURI, systemID, lineNr);
+   }
+
+
+   /**
+    * This method is called when the end of an XML elemnt is encountered.
+    *
+    * @param name       the name of the element.
+    * @param nsPrefix   the prefix used to identify the namespace.
+    * @param nsURI      the URI associated with the namespace.
+    */
+   public void endElement(String name,
+                          String nsPrefix,
+                          String nsURI)
+   {
+      this.endText();
+      super.endElement(name, nsPrefix, nsURI);
+   }
+
+
+   /**
+    * This method is called when a PCDATA element is encountered.
+    *
+    * @param reader   the Java reader from which you can retrieve the data.
+    * @param systemID the system ID of the XML data source.
+    * @param lineNr   the line in the source where the element starts.
+    */
+   public void addPCData(Reader reader,
+                         String systemID,
+                         int    lineNr)
+   {
+      try {
+         int size = reader.read(this.chars);
+
+         while (size > 0) {
+            this.addCharacters(this.chars, 0, size, systemID, lineNr);
+            size = reader.read(this.chars);
+         }
+      } catch (IOException e) {
+         throw new UncheckedIOException(e);
+      } catch (RuntimeException e) {
+         throw e;
+      } catch (Exception e) {
+         throw new IllegalStateException(e.getMessage(), e);
+      }
+   }
+
+
+   /**
+    * This method is called when a PCDATA element is encountered. The text
+    * is kept like any other text, unless it is redirected. If it cannot be
+    * redirected, the writer is closed.
+    *
+    * @param buffer   the array which contains the text.
+    * @param offset   the position in the array of the first character.
+    * @param length   the number of characters.
+    * @param systemID the system ID of the XML data source.
+    * @param lineNr   the line in the source where the element starts.
+    *
+    * @throws java.lang.Exception
+    *     If the text could not be redirected.
+    */
+   public void addCharacters(char[] buffer,
+                             int    offset,
+                             int    length,
+                             String systemID,
+                             int    lineNr)
+      throws Exception
+   {
+      try {
+         if (this.writer != null) {
+            this.writer.write(buffer, offset, length);
+            return;
+         }
+
+         if (this.getTextLength() == 0) {
+            this.textSystemID = systemID;
+            this.textLineNr = lineNr;
+         }
+
+         this.addText(buffer, offset, length, systemID, lineNr);
+
+         if ((this.getTextLength() > this.threshold)
+             && (! this.writerRequested)) {
+            this.writerRequested = true;
+            this.writer = this.openTextWriter(this.getCurrentElement(),
+                                              this.textSystemID,
+                                              this.textLineNr);
+
+            if (this.writer != null) {
+               this.writer.write(this.takeText());
+            }
+         }
+      } catch (Exception e) {
+         try {
+            this.close();
+         } catch (IOException f) {
+            e.addSuppressed(f);
+         }
+
+         throw e;
+      }
+   }
+
+
+   /**
+    * Ends the current text. If it has been redirected, the writer is
+    * closed; otherwise the text is left to be added to the tree.
+    */
+   private void endText()
+   {
+      try {
+         this.close();
+      } catch (IOException e) {
+         throw new UncheckedIOException(e);
+      }
+   }
+
+}
@@ -0,0 +1,323 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+/**
+ * XMLSymbolTable maps the names found in XML data to canonical strings, so
+ * that a name which occurs many times is stored only once. The characters of
+ * a name are hashed where they are, so looking up a name which is already in
+ * the table does not create any objects.
+ * <P>
+ * The number of symbols in a table is bounded; once a table is full, names
+ * which are not in it yet are returned as new strings. A table may be shared
+ * by several parsers, but it is not synchronized, so the parsers must not
+ * use it at the same time.
+ *
+ */
+public class XMLSymbolTable
+{
+
+   /**
+    * The default maximum number of symbols.
+    */
+   public static final int DEFAULT_MAX_SIZE = 4096;
+
+
+   /**
+    * The initial number of slots.
+    */
+   private static final int INITIAL_CAPACITY = 64;
+
+
+   /**
+    * The symbols, indexed by hash code. Empty slots are null.
+    */
+   private String[] symbols;
+
+
+   /**
+    * The hash codes of the symbols.
+    */
+   private int[] hashes;
+
+
+   /**
+    * The number of symbols.
+    */
+   private int size;
+
+
+   /**
+    * The maximum number of symbols.
+    */
+   private int maxSize;
+
+
+   /**
+    * Creates an empty table which holds up to DEFAULT_MAX_SIZE symbols.
+    */
+   public XMLSymbolTable()
+   {
+      this(DEFAULT_MAX_SIZE);
+   }
+
+
+   /**
+    * Creates an empty table.
+    *
+    * @param maxSize the maximum number of symbols
+    */
+   public XMLSymbolTable(int maxSize)
+   {
+      if (maxSize < 0) {
+         throw new IllegalArgumentException("maxSize: " + maxSize);
+      }
+
+      this.maxSize = maxSize;
+      this.clear();
+   }
+
+
+   /**
+    * Cleans up the object when it's destroyed.
+    */
+   protected void finalize()
+      throws Throwable
+   {
+      this.symbols = null;
+      this.hashes = null;
+      super.finalize();
+   }
+
+
+   /**
+    * Removes all symbols from the table.
+    */
+   public void clear()
+   {
+      this.symbols = new String[INITIAL_CAPACITY];
+      this.hashes = new int[INITIAL_CAPACITY];
+      this.size = 0;
+   }
+
+
+   /**
+    * Returns the number of symbols in the table.
+    *
+    * @return the number of symbols
+    */
+   public int size()
+   {
+      return this.size;
+   }
+
+
+   /**
+    * Returns the maximum number of symbols in the table.
+    *
+    * @return the maximum number of symbols
+    */
+   public int getMaxSize()
+   {
+      return this.maxSize;
+   }
+
+
+   /**
+    * Returns the symbol for a range of characters.
+    *
+    * @param chars  the characters
+    * @param offset the position of the first character of the name
+    * @param length the length of the name
+    *
+    * @return the symbol
+    */
+   public String getSymbol(char[] chars,
+                           int    offset,
+                           int    length)
+   {
+      int hash = 0;
+
+      for (int i = offset; i < offset + length; i++) {
+         hash = (31 * hash) + chars[i];
+      }
+
+      int mask = this.symbols.length - 1;
+      int index = (hash ^ (hash >>> 16)) & mask;
+
+      for (;;) {
+         String symbol = this.symbols[index];
+
+         if (symbol == null) {
+            break;
+         }
+
+         if ((this.hashes[index] == hash) && (symbol.length() == length)) {
+            int i = 0;
+
+            while ((i < length) && (symbol.charAt(i) == chars[offset + i])) {
+               i++;
+            }
+
+            if (i == length) {
+               return symbol;
+            }
+         }
+
+         index = (index + 1) & mask;
+      }
+
+      String symbol = new String(chars, offset, length);
+      this.add(symbol, hash, index);
+      return symbol;
+   }
+
+
+   /**
+    * Returns the symbol for a part of a string.
+    *
+    * @param str    the string
+    * @param offset the position of the first character of the name
+    * @param length the length of the name
+    *
+    * @return the symbol
+    */
+   public String getSymbol(String str,
+                           int    offset,
+                           int    length)
+   {
+      int hash;
+
+      if ((offset == 0) && (length == str.length())) {
+         hash = str.hashCode();
+      } else {
+         hash = 0;
+
+         for (int i = offset; i < offset + length; i++) {
+            hash = (31 * hash) + str.charAt(i);
+         }
+      }
+
+      int mask = this.symbols.length - 1;
+      int index = (hash ^ (hash >>> 16)) & mask;
+
+      for (;;) {
+         String symbol = this.symbols[index];
+
+         if (symbol == null) {
+            break;
+         }
+
+         if ((this.hashes[index] == hash) && (symbol.length() == length)
+             && symbol.regionMatches(0, str, offset, length)) {
+            return symbol;
+         }
+
+         index = (index + 1) & mask;
+      }
+
+      String symbol = str;
+
+      if ((offset != 0) || (length != str.length())) {
+         symbol = str.substring(offset, offset + length);
+      }
+
+      this.add(symbol, hash, index);
+      return symbol;
+   }
+
+
+   /**
+    * Returns the symbol for a string.
+    *
+    * @param str the string
+    *
+    * @return the symbol, which is <code>str</code> itself if the table did
+    *         not contain the string yet
+    */
+   public String getSymbol(String str)
+   {
+      return this.getSymbol(str, 0, str.length());
+   }
+
+
+   /**
+    * Adds a symbol to the table, unless the table is full.
+    *
+    * @param symbol the symbol
+    * @param hash   the hash code of the symbol
+    * @param index  the empty slot where the symbol has to be stored
+    */
+   private void add(String symbol,
+                    int    hash,
+                    int    index)
+   {
+      if (this.size >= this.maxSize) {
+         return;
+      }
+
+      this.symbols[index] = symbol;
+      this.hashes[index] = hash;
+      this.size++;
+
+      if ((this.size * 2) > this.symbols.length) {
+         this.rehash();
+      }
+   }
+
+
+   /**
+    * Doubles the number of slots.
+    */
+   private void rehash()
+   {
+      String[] oldSymbols = this.symbols;
+      int[] oldHashes = this.hashes;
+      this.symbols = new String[oldSymbols.length * 2];
+      this.hashes = new int[oldSymbols.length * 2];
+      int mask = this.symbols.length - 1;
+
+      for (int i = 0; i < oldSymbols.length; i++) {
+         if (oldSymbols[i] != null) {
+            int hash = oldHashes[i];
+            int index = (hash ^ (hash >>> 16)) & mask;
+
+            while (this.symbols[index] != null) {
+               index = (index + 1) & mask;
+            }
+
+            this.symbols[index] = oldSymbols[i];
+            this.hashes[index] = hash;
+         }
+      }
+   }
+
+}
@@ -0,0 +1,256 @@
+/*-
+ * =================================LICENSE_START==================================
+ * picoxml
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * This file is part of PicoXML 2 for Java.
+ * 
+ * Copyright (C) 2000-2002 Marc De Scheemaecker, All Rights Reserved.
+ * Copyright (C) 2020-2020 Saúl Hidalgo, All Rights Reserved.
+ * Copyright (C) 2023-2023 Andy Boothe, All Rights Reserved.
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty.  In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ * 1. The origin of this software must not be misrepresented; you must not
+ *    claim that you wrote the original software. If you use this software
+ *    in a product, an acknowledgment in the product documentation would be
+ *    appreciated but is not required.
+ * 2. Altered source versions must be plainly marked as such, and must not be
+ *    misrepresented as being the original software.
+ * 3. This notice may not be removed or altered from any source distribution.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.picoxml;
+
+
+import java.io.IOException;
+
+
+/**
+ * XMLTokenizer reads characters and entity references from a reader without
+ * allocating objects. A character is returned as its code; a reference is
+ * returned as ENTITY_REFERENCE or CHARACTER_REFERENCE, and its name is kept
+ * in a buffer which is reused for every reference.
+ *
+ */
+class XMLTokenizer
+{
+
+   /**
+    * The token returned for an entity reference.
+    */
+   static final int ENTITY_REFERENCE = -1;
+
+
+   /**
+    * The token returned for a character reference.
+    */
+   static final int CHARACTER_REFERENCE = -2;
+
+
+   /**
+    * The names of the predefined entities.
+    */
+   private static final String[] PREDEFINED_ENTITIES
+      = { "amp", "lt", "gt", "quot", "apos" };
+
+
+   /**
+    * The name of the last reference, without the escape character and the
+    * semicolon.
+    */
+   private char[] name;
+
+
+   /**
+    * The length of the name of the last reference.
+    */
+   private int nameLength;
+
+
+   /**
+    * The escape character of the last reference.
+    */
+   private char entityChar;
+
+
+   /**
+    * Creates the tokenizer.
+    */
+   XMLTokenizer()
+   {
+      this.name = new char[16];
+      this.nameLength = 0;
+      this.entityChar = '&';
+   }
+
+
+   /**
+    * Reads a character or a reference from the reader.
+    *
+    * @param reader     the reader
+    * @param entityChar the escape character (&amp; or %) used to indicate
+    *                   an entity
+    *
+    * @return the character, ENTITY_REFERENCE or CHARACTER_REFERENCE
+    *
+    * @throws java.io.IOException
+    *		if an error occurred reading the data
+    */
+   int read(IXMLReader reader,
+            char       entityChar)
+      throws IOException
+   {
+      char ch = reader.read();
+
+      if (ch != entityChar) {
+         return ch;
+      }
+
+      this.entityChar = entityChar;
+      int length = 0;
+      ch = reader.read();
+
+      while (ch != ';') {
+         if (length == this.name.length) {
+            char[] newName = new char[length * 2];
+            System.arraycopy(this.name, 0, newName, 0, length);
+            this.name = newName;
+         }
+
+         this.name[length++] = ch;
+         ch = reader.read();
+      }
+
+      this.nameLength = length;
+
+      if ((length > 0) && (this.name[0] == '#')) {
+         return CHARACTER_REFERENCE;
+      }
+
+      return ENTITY_REFERENCE;
+   }
+
+
+   /**
+    * Returns the name of the last reference. The names of the predefined
+    * entities are returned without creating a new string.
+    *
+    * @return the name, e.g. <code>amp</code> or <code>#38</code>
+    */
+   String getEntityName()
+   {
+      for (int i = 0; i < PREDEFINED_ENTITIES.length; i++) {
+         if (this.nameEquals(PREDEFINED_ENTITIES[i])) {
+            return PREDEFINED_ENTITIES[i];
+         }
+      }
+
+      return new String(this.name, 0, this.nameLength);
+   }
+
+
+   /**
+    * Returns true if the name of the last reference is equal to a string.
+    *
+    * @param str the string
+    */
+   private boolean nameEquals(String str)
+   {
+      if (this.nameLength != str.length()) {
+         return false;
+      }
+
+      for (int i = 0; i < this.nameLength; i++) {
+         if (this.name[i] != str.charAt(i)) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+
+   /**
+    * Returns the last reference as it appeared in the data.
+    *
+    * @return the reference, e.g. <code>&amp;amp;</code>
+    */
+   String getReference()
+   {
+      return this.entityChar + new String(this.name, 0, this.nameLength)
+         + ';';
+   }
+
+
+   /**
+    * Returns the character of the last character reference.
+    *
+    * @return the character
+    *
+    * @throws java.lang.NumberFormatException
+    *		if the reference does not contain a valid number
+    */
+   char getCharacter()
+   {
+      return XMLTokenizer.getCharacter(this.name, 0, this.nameLength);
+   }
+
+
+   /**
+    * Returns the character of a character reference.
+    *
+    * @param name the buffer holding the reference
+    * @param offset the position of the <code>#</code> in the buffer
+    * @param length the length of the reference, without the <code>&amp;</code>
+    *               and the <code>;</code>
+    *
+    * @return the character
+    *
+    * @throws java.lang.NumberFormatException
+    *		if the reference does not contain a valid number
+    */
+   static char getCharacter(char[] name,
+                            int    offset,
+                            int    length)
+   {
+      int start = 1;
+      int radix = 10;
+
+      if ((length > 1) && (name[offset + 1] == 'x')) {
+         start = 2;
+         radix = 16;
+      }
+
+      if ((length > start) && (length - start <= 6)) {
+         int value = 0;
+
+         for (int i = start; i < length; i++) {
+            int digit = Character.digit(name[offset + i], radix);
+
+            if (digit < 0) {
+               value = -1;
+               break;
+            }
+
+            value = (value * radix) + digit;
+         }
+
+         if (value >= 0) {
+            return (char) value;
+         }
+      }
+
+      return (char) Integer.parseInt(new String(name, offset + start,
+                                                length - start),
+                                     radix);
+   }
+
+}
@@ -32,7 +32,6 @@ package com.sigpwned.picoxml;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.CharArrayReader;
 
 
 /**
@@ -42,6 +41,176 @@ import java.io.CharArrayReader;
 class XMLUtil
 {
 
+   /**
+    * Detects the encoding of XML data from its byte order mark or from the
+    * encoding of its first characters.
+    *
+    * @param bytes  the first bytes of the XML data
+    * @param length the number of bytes available
+    *
+    * @return the name of the encoding, or null if the data starts with
+    *         characters of an encoding which is compatible with ASCII.
+    */
+   static String detectByteOrder(byte[] bytes,
+                                 int    length)
+   {
+      int b0 = (length > 0) ? (bytes[0] & 0xFF) : -1;
+      int b1 = (length > 1) ? (bytes[1] & 0xFF) : -1;
+      int b2 = (length > 2) ? (bytes[2] & 0xFF) : -1;
+      int b3 = (length > 3) ? (bytes[3] & 0xFF) : -1;
+
+      if ((b0 == 0xEF) && (b1 == 0xBB) && (b2 == 0xBF)) {
+         return "UTF-8";
+      } else if ((b0 == 0x00) && (b1 == 0x00)
+                 && (((b2 == 0xFE) && (b3 == 0xFF))
+                     || ((b2 == 0x00) && (b3 == 0x3C)))) {
+         return "UTF-32BE";
+      } else if ((b0 == 0xFF) && (b1 == 0xFE) && (b2 == 0x00)
+                 && (b3 == 0x00)) {
+         return "UTF-32LE";
+      } else if ((b0 == 0x3C) && (b1 == 0x00) && (b2 == 0x00)
+                 && (b3 == 0x00)) {
+         return "UTF-32LE";
+      } else if (((b0 == 0xFE) && (b1 == 0xFF))
+                 || ((b0 == 0x00) && (b1 == 0x3C) && (b2 == 0x00)
+                     && (b3 == 0x3F))) {
+         return "UTF-16BE";
+      } else if (((b0 == 0xFF) && (b1 == 0xFE))
+                 || ((b0 == 0x3C) && (b1 == 0x00) && (b2 == 0x3F)
+                     && (b3 == 0x00))) {
+         return "UTF-16LE";
+      } else if ((b0 == 0x00) || (b0 == 0xFE) || (b0 == 0xFF)) {
+         return "UTF-16";
+      } else {
+         return null;
+      }
+   }
+
+
+   /**
+    * Returns the length of the byte order mark at the start of XML data.
+    *
+    * @param bytes  the first bytes of the XML data
+    * @param length the number of bytes available
+    *
+    * @return the length of the byte order mark, or 0 if there is none
+    */
+   static int getByteOrderMarkLength(byte[] bytes,
+                                     int    length)
+   {
+      int b0 = (length > 0) ? (bytes[0] & 0xFF) : -1;
+      int b1 = (length > 1) ? (bytes[1] & 0xFF) : -1;
+      int b2 = (length > 2) ? (bytes[2] & 0xFF) : -1;
+      int b3 = (length > 3) ? (bytes[3] & 0xFF) : -1;
+
+      if ((b0 == 0xEF) && (b1 == 0xBB) && (b2 == 0xBF)) {
+         return 3;
+      } else if ((b0 == 0x00) && (b1 == 0x00) && (b2 == 0xFE)
+                 && (b3 == 0xFF)) {
+         return 4;
+      } else if ((b0 == 0xFF) && (b1 == 0xFE) && (b2 == 0x00)
+                 && (b3 == 0x00)) {
+         return 4;
+      } else if (((b0 == 0xFE) && (b1 == 0xFF))
+                 || ((b0 == 0xFF) && (b1 == 0xFE))) {
+         return 2;
+      } else {
+         return 0;
+      }
+   }
+
+
+   /**
+    * Returns the first tag of XML data in an encoding which is compatible
+    * with ASCII.
+    *
+    * @param bytes  the first bytes of the XML data
+    * @param length the number of bytes available
+    *
+    * @return the first tag, up to and including its closing &gt;
+    */
+   static String scanDeclaration(byte[] bytes,
+                                 int    length)
+   {
+      StringBuffer prolog = new StringBuffer();
+
+      for (int i = 0; i < length; i++) {
+         prolog.append((char) (bytes[i] & 0xFF));
+
+         if (bytes[i] == 0x3E) {
+            break;
+         }
+      }
+
+      return prolog.toString();
+   }
+
+
+   /**
+    * Scans the encoding from an &lt;?xml...?&gt; tag.
+    *
+    * @param str the first tag in the XML data.
+    *
+    * @return the encoding, or null if no encoding has been specified.
+    */
+   static String scanEncoding(String str)
+   {
+      if (! str.startsWith("<?xml")) {
+         return null;
+      }
+
+      int index = 5;
+
+      while (index < str.length()) {
+         StringBuffer key = new StringBuffer();
+
+         while ((index < str.length()) && (str.charAt(index) <= ' ')) {
+            index++;
+         }
+
+         while ((index < str.length())
+                && (str.charAt(index) >= 'a')
+                && (str.charAt(index) <= 'z')) {
+            key.append(str.charAt(index));
+            index++;
+         }
+
+         while ((index < str.length()) && (str.charAt(index) <= ' ')) {
+            index++;
+         }
+
+         if ((index >= str.length()) || (str.charAt(index) != '=')) {
+            break;
+         }
+
+         while ((index < str.length()) && (str.charAt(index) != '\'')
+                && (str.charAt(index) != '"')) {
+            index++;
+         }
+
+         if (index >= str.length()) {
+            break;
+         }
+
+         char delimiter = str.charAt(index);
+         index++;
+         int index2 = str.indexOf(delimiter, index);
+
+         if (index2 < 0) {
+            break;
+         }
+
+         if (key.toString().equals("encoding")) {
+            return str.substring(index, index2);
+         }
+
+         index = index2 + 1;
+      }
+
+      return null;
+   }
+
+
    /**
     * Skips the remainder of a comment.
     * It is assumed that &lt;!- is already read.
@@ -60,26 +229,8 @@ class XMLUtil
                                     reader.getLineNr(),
                                     "<!--");
       }
-      
-      int dashesRead = 0;
-
-      for (;;) {
-         char ch = reader.read();
-
-         switch (ch) {
-            case '-':
-               dashesRead++;
-               break;
-
-            case '>':
-               if (dashesRead == 2) {
-                  return;
-               }
 
-            default:
-               dashesRead = 0;
-         }
-      }
+      reader.skipPast("-->");
    }
 
 
@@ -113,6 +264,115 @@ class XMLUtil
    }
 
 
+   /**
+    * Skips the remainder of an element, up to and including its end tag.
+    * It is assumed that &lt; and the name of the element are already read.
+    * Nested elements are counted, but the skipped data is not checked for
+    * well-formedness and entity references are not resolved.
+    *
+    * @param reader the reader
+    * @param buffer where to put the skipped characters
+    *
+    * @throws java.io.IOException
+    *		if an error occurred reading the data
+    */
+   static void skipElement(IXMLReader reader,
+                           char[]     buffer)
+      throws IOException,
+             XMLParseException
+   {
+      int level = XMLUtil.skipToTagEnd(reader, buffer) ? 0 : 1;
+
+      while (level > 0) {
+         while (reader.readUntil(buffer, 0, buffer.length, "<")
+                == buffer.length) {
+            // skip the text
+         }
+
+         reader.read();
+         char ch = reader.read();
+
+         switch (ch) {
+            case '/':
+               XMLUtil.skipToTagEnd(reader, buffer);
+               --level;
+               break;
+
+            case '?':
+               reader.skipPast("?>");
+               break;
+
+            case '!':
+               ch = reader.read();
+
+               if (ch == '-') {
+                  XMLUtil.skipComment(reader);
+               } else if (ch == '[') {
+                  reader.skipPast("]]>");
+               } else {
+                  XMLUtil.skipTag(reader);
+               }
+
+               break;
+
+            default:
+               reader.unread(ch);
+
+               if (! XMLUtil.skipToTagEnd(reader, buffer)) {
+                  ++level;
+               }
+         }
+      }
+   }
+
+
+   /**
+    * Skips the remainder of a tag, including any quoted attribute values.
+    *
+    * @param reader the reader
+    * @param buffer where to put the skipped characters
+    *
+    * @return true if the tag is an empty element tag
+    *
+    * @throws java.io.IOException
+    *		if an error occurred reading the data
+    */
+   private static boolean skipToTagEnd(IXMLReader reader,
+                                       char[]     buffer)
+      throws IOException
+   {
+      char last = '\0';
+
+      for (;;) {
+         int size;
+
+         do {
+            size = reader.readUntil(buffer, 0, buffer.length, "'\">");
+
+            if (size > 0) {
+               last = buffer[size - 1];
+            }
+         } while (size == buffer.length);
+
+         char ch = reader.read();
+
+         if (ch == '>') {
+            return last == '/';
+         }
+
+         String quote = (ch == '\'') ? "'" : "\"";
+
+         while (reader.readUntil(buffer, 0, buffer.length, quote)
+                == buffer.length) {
+            // skip the value
+         }
+
+         reader.read();
+         last = ch;
+      }
+   }
+
+
    /**
     * Scans a public ID.
     *
@@ -133,10 +393,11 @@ class XMLUtil
          return null;
       }
 
+      XMLTokenizer tokenizer = new XMLTokenizer();
       XMLUtil.skipWhitespace(reader, null);
-      publicID.append(XMLUtil.scanString(reader, '\0', null));
+      publicID.append(XMLUtil.scanString(reader, '\0', null, tokenizer));
       XMLUtil.skipWhitespace(reader, null);
-      return XMLUtil.scanString(reader, '\0', null);
+      return XMLUtil.scanString(reader, '\0', null, tokenizer);
    }
 
 
@@ -159,7 +420,7 @@ class XMLUtil
       }
 
       XMLUtil.skipWhitespace(reader, null);
-      return XMLUtil.scanString(reader, '\0', null);
+      return XMLUtil.scanString(reader, '\0', null, new XMLTokenizer());
    }
 
 
@@ -176,22 +437,70 @@ class XMLUtil
              XMLParseException
    {
       StringBuffer result = new StringBuffer();
+      reader.readName(result);
+      return result.toString();
+   }
 
-      for (;;) {
-         char ch = reader.read();
 
-         if ((ch == '_') || (ch == ':') || (ch == '-') || (ch == '.')
-             || ((ch >= 'a') && (ch <= 'z'))
-             || ((ch >= 'A') && (ch <= 'Z'))
-             || ((ch >= '0') && (ch <= '9')) || (ch > '\u007E')) {
-            result.append(ch);
-         } else {
-            reader.unread(ch);
-            break;
+   /**
+    * Retrieves an identifier from the data and returns its symbol.
+    *
+    * @param reader  the reader
+    * @param symbols the symbol table
+    *
+    * @throws java.io.IOException
+    *		if an error occurred reading the data
+    */
+   static String scanIdentifier(IXMLReader     reader,
+                                XMLSymbolTable symbols)
+      throws IOException
+   {
+      return reader.readName(symbols);
+   }
+
+
+   /**
+    * Returns true if a character may be part of an identifier.
+    *
+    * @param ch the character
+    */
+   static boolean isNameChar(char ch)
+   {
+      return (ch == '_') || (ch == ':') || (ch == '-') || (ch == '.')
+         || ((ch >= 'a') && (ch <= 'z'))
+         || ((ch >= 'A') && (ch <= 'Z'))
+         || ((ch >= '0') && (ch <= '9')) || (ch > '\u007E');
+   }
+
+
+   /**
+    * Returns how many characters of a literal have been matched after
+    * reading a character.
+    *
+    * @param literal the literal
+    * @param matched the number of characters matched before the character
+    *                was read
+    * @param ch      the character
+    *
+    * @return the length of the longest prefix of the literal which ends
+    *         with the character
+    */
+   static int matchLiteral(String literal,
+                           int    matched,
+                           char   ch)
+   {
+      if (literal.charAt(matched) == ch) {
+         return matched + 1;
+      }
+
+      for (int i = matched; i > 0; i--) {
+         if ((literal.charAt(i - 1) == ch)
+             && literal.regionMatches(0, literal, matched - i + 1, i - 1)) {
+            return i;
          }
       }
 
-      return result.toString();
+      return 0;
    }
 
 
@@ -201,13 +510,15 @@ class XMLUtil
     * @param reader              the reader
     * @param entityChar          the escape character (&amp; or %)
     * @param entityResolver      the entity resolver
+    * @param tokenizer           the tokenizer
     *
     * @throws java.io.IOException
     *		if an error occurred reading the data
     */
    static String scanString(IXMLReader         reader,
                             char               entityChar,
-                            IXMLEntityResolver entityResolver)
+                            IXMLEntityResolver entityResolver,
+                            XMLTokenizer       tokenizer)
       throws IOException,
              XMLParseException
    {
@@ -222,33 +533,42 @@ class XMLUtil
       }
 
       for (;;) {
-         String str = XMLUtil.read(reader, entityChar);
-         char ch = str.charAt(0);
+         int token = tokenizer.read(reader, entityChar);
 
-         if (ch == entityChar) {
-            if (str.charAt(1) == '#') {
-               result.append(XMLUtil.processCharLiteral(str));
+         if (token == XMLTokenizer.CHARACTER_REFERENCE) {
+            result.append(tokenizer.getCharacter());
+         } else if (token == XMLTokenizer.ENTITY_REFERENCE) {
+            String name = tokenizer.getEntityName();
+            String literal = null;
+
+            if (entityChar == '&') {
+               literal = XMLUtil.getLiteralEntity(name, entityResolver);
+            }
+
+            if (literal != null) {
+               result.append(literal);
             } else {
-               XMLUtil.processEntity(str, reader, entityResolver);
+               XMLUtil.processEntity(name, reader, entityResolver);
             }
-         } else if (ch == '&') {
-            reader.unread(ch);
-            str = XMLUtil.read(reader, '&');
-            if (str.charAt(1) == '#') {
-               result.append(XMLUtil.processCharLiteral(str));
+         } else if (token == '&') {
+            reader.unread('&');
+            token = tokenizer.read(reader, '&');
+
+            if (token == XMLTokenizer.CHARACTER_REFERENCE) {
+               result.append(tokenizer.getCharacter());
             } else {
-               result.append(str);
+               result.append(tokenizer.getReference());
             }
          } else if (reader.getStreamLevel() == startingLevel) {
-            if (ch == delim) {
+            if (token == delim) {
                break;
-            } else if ((ch == 9) || (ch == 10) || (ch == 13)) {
+            } else if ((token == 9) || (token == 10) || (token == 13)) {
                result.append(' ');
             } else {
-               result.append(ch);
+               result.append((char) token);
             }
          } else {
-            result.append(ch);
+            result.append((char) token);
          }
       }
 
@@ -259,7 +579,7 @@ class XMLUtil
    /**
     * Processes an entity.
     *
-    * @param entity         the entity
+    * @param entity         the name of the entity
     * @param reader         the reader
     * @param entityResolver the entity resolver
     *
@@ -272,7 +592,6 @@ class XMLUtil
       throws IOException,
              XMLParseException
    {
-      entity = entity.substring(1, entity.length() - 1);
       Reader entityReader = entityResolver.getEntity(reader, entity);
 
       if (entityReader == null) {
@@ -287,26 +606,25 @@ class XMLUtil
 
 
    /**
-    * Processes a character literal.
+    * Returns the literal replacement text of an entity, which can be
+    * inserted into the data without pushing a new stream.
     *
-    * @param entity         the entity
+    * @param entity         the name of the entity
+    * @param entityResolver the entity resolver
     *
-    * @throws java.io.IOException
-    *		if an error occurred reading the data
+    * @return the replacement text, or null if the entity has to be processed
+    *         by <code>processEntity</code>
     */
-   static char processCharLiteral(String entity)
-      throws IOException,
-             XMLParseException
+   static String getLiteralEntity(String             entity,
+                                  IXMLEntityResolver entityResolver)
    {
-      if (entity.charAt(2) == 'x') {
-         entity = entity.substring(3, entity.length() - 1);
-         return (char) Integer.parseInt(entity, 16);
-      } else {
-         entity = entity.substring(2, entity.length() - 1);
-         return (char) Integer.parseInt(entity, 10);
+      if (! (entityResolver instanceof XMLEntityResolver)) {
+         return null;
       }
+
+      return ((XMLEntityResolver) entityResolver).getLiteralEntity(entity);
    }
-   
+
 
    /**
     * Skips whitespace from the reader.
@@ -322,64 +640,10 @@ class XMLUtil
                               StringBuffer buffer)
       throws IOException
    {
-      char ch;
-
-      if (buffer == null) {
-         do {
-            ch = reader.read();
-         } while ((ch == ' ') || (ch == '\t') || (ch == '\n'));
-      } else {
-         for (;;) {
-            ch = reader.read();
-
-            if ((ch != ' ') && (ch != '\t') && (ch != '\n')) {
-               break;
-            }
-
-            if (ch == '\n') {
-               buffer.append('\n');
-            } else {
-               buffer.append(' ');
-            }
-         }
-      }
-
-      reader.unread(ch);
+      reader.skipWhitespace(buffer);
    }
    
 
-   /**
-    * Reads a character from the reader.
-    *
-    * @param reader         the reader
-    * @param entityChar     the escape character (&amp; or %) used to indicate
-    *                       an entity
-    *
-    * @return the character, or an entity expression (like e.g. &amp;lt;)
-    *
-    * @throws java.io.IOException
-    *		if an error occurred reading the data
-    */
-   static String read(IXMLReader         reader,
-                      char               entityChar)
-      throws IOException,
-             XMLParseException
-   {
-      char ch = reader.read();
-      StringBuffer buf = new StringBuffer();
-      buf.append(ch);
-
-      if (ch == entityChar) {
-         while (ch != ';') {
-            ch = reader.read();
-            buf.append(ch);
-         }
-      }
-
-      return buf.toString();
-   }
-
-
    /**
     * Reads a character from the reader disallowing entities.
     *
@@ -392,13 +656,15 @@ class XMLUtil
       throws IOException,
              XMLParseException
    {
-      String str = XMLUtil.read(reader, entityChar);
-      char ch = str.charAt(0);
+      char ch = reader.read();
 
       if (ch == entityChar) {
+         XMLTokenizer tokenizer = new XMLTokenizer();
+         reader.unread(ch);
+         tokenizer.read(reader, entityChar);
          XMLUtil.errorUnexpectedEntity(reader.getSystemID(),
                                        reader.getLineNr(),
-                                       str);
+                                       tokenizer.getReference());
       }
 
       return ch;
@@ -135,13 +135,15 @@ public class XMLWriter {
       }
     }
 
+    String content = xml.getContent();
+
     if (xml.getName() == null) {
-      if (xml.getContent() != null) {
+      if (content != null) {
         if (prettyPrint) {
-          this.writeEncoded(xml.getContent().trim());
+          this.writeEncoded(content.trim());
           writer.println();
         } else {
-          this.writeEncoded(xml.getContent());
+          this.writeEncoded(content);
         }
       }
     } else {
@@ -192,9 +194,9 @@ public class XMLWriter {
         this.writer.print('"');
       }
 
-      if ((xml.getContent() != null) && (xml.getContent().length() > 0)) {
+      if ((content != null) && (content.length() > 0)) {
         writer.print('>');
-        this.writeEncoded(xml.getContent());
+        this.writeEncoded(content);
         writer.print("</" + xml.getFullName() + '>');
 
         if (prettyPrint) {
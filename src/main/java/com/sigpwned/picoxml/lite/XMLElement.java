@@ -32,11 +32,9 @@ package com.sigpwned.picoxml.lite;
 
 
 import java.io.ByteArrayOutputStream;
-import java.io.CharArrayReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.Writer;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -242,6 +240,37 @@ public class XMLElement
     private Reader reader;
 
 
+    /**
+     * The char array provided by the caller of the parseCharArray method,
+     * which is scanned directly instead of through a reader.
+     * If the input is read from a reader, this field is <code>null</code>.
+     */
+    private char[] input;
+
+
+    /**
+     * The string provided by the caller of the parseString method, which is
+     * scanned directly instead of through a reader or a copied array.
+     * If the input is not read from a string, this field is
+     * <code>null</code>.
+     */
+    private String inputString;
+
+
+    /**
+     * The position of the next character to read in <code>input</code> or
+     * <code>inputString</code>.
+     */
+    private int inputPosition;
+
+
+    /**
+     * The position where to stop scanning <code>input</code> or
+     * <code>inputString</code>.
+     */
+    private int inputEnd;
+
+
     /**
      * The current line number in the source content.
      *
@@ -1687,8 +1716,23 @@ public class XMLElement
                                 int    startingLineNr)
         throws IOException, XMLParseException
     {
-        this.charReadTooMuch = '\0';
         this.reader = reader;
+        this.input = null;
+        this.inputString = null;
+        this.scanDocument(startingLineNr);
+    }
+
+
+    /**
+     * Reads one XML element from the input and parses it.
+     *
+     * @param startingLineNr
+     *     The line number of the first line in the data.
+     */
+    private void scanDocument(int startingLineNr)
+        throws IOException, XMLParseException
+    {
+        this.charReadTooMuch = '\0';
         this.parserLineNr = startingLineNr;
 
         for (;;) {
@@ -1733,12 +1777,7 @@ public class XMLElement
     public void parseString(String string)
         throws XMLParseException
     {
-        try {
-            this.parseFromReader(new StringReader(string),
-                                 /*startingLineNr*/ 1);
-        } catch (IOException e) {
-            // Java exception handling suxx
-        }
+        this.parseString(string, 0, string.length(), /*startingLineNr*/ 1);
     }
 
 
@@ -1768,7 +1807,8 @@ public class XMLElement
                             int    offset)
         throws XMLParseException
     {
-        this.parseString(string.substring(offset));
+        this.parseString(string, offset, string.length(),
+                         /*startingLineNr*/ 1);
     }
 
 
@@ -1803,7 +1843,7 @@ public class XMLElement
                             int    end)
         throws XMLParseException
     {
-        this.parseString(string.substring(offset, end));
+        this.parseString(string, offset, end, /*startingLineNr*/ 1);
     }
 
 
@@ -1841,11 +1881,18 @@ public class XMLElement
                             int    startingLineNr)
         throws XMLParseException
     {
-        string = string.substring(offset, end);
+        this.reader = null;
+        this.input = null;
+        this.inputString = string;
+        this.inputPosition = offset;
+        this.inputEnd = end;
+
         try {
-            this.parseFromReader(new StringReader(string), startingLineNr);
+            this.scanDocument(startingLineNr);
         } catch (IOException e) {
-            // Java exception handling suxx
+            // This exception will never happen.
+        } finally {
+            this.inputString = null;
         }
     }
 
@@ -1919,11 +1966,18 @@ public class XMLElement
                                int    startingLineNr)
         throws XMLParseException
     {
+        this.reader = null;
+        this.input = input;
+        this.inputString = null;
+        this.inputPosition = offset;
+        this.inputEnd = end;
+
         try {
-            Reader reader = new CharArrayReader(input, offset, end);
-            this.parseFromReader(reader, startingLineNr);
+            this.scanDocument(startingLineNr);
         } catch (IOException e) {
             // This exception will never happen.
+        } finally {
+            this.input = null;
         }
     }
 
@@ -2574,6 +2628,24 @@ public class XMLElement
             char ch = this.charReadTooMuch;
             this.charReadTooMuch = '\0';
             return ch;
+        } else if (this.input != null) {
+            if (this.inputPosition >= this.inputEnd) {
+                throw this.unexpectedEndOfData();
+            }
+            char ch = this.input[this.inputPosition++];
+            if (ch == '\n') {
+                this.parserLineNr += 1;
+            }
+            return ch;
+        } else if (this.inputString != null) {
+            if (this.inputPosition >= this.inputEnd) {
+                throw this.unexpectedEndOfData();
+            }
+            char ch = this.inputString.charAt(this.inputPosition++);
+            if (ch == '\n') {
+                this.parserLineNr += 1;
+            }
+            return ch;
         } else {
             int i = this.reader.read();
             if (i < 0) {
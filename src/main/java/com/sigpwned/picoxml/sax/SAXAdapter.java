@@ -42,6 +42,7 @@ import org.xml.sax.Locator;
 import org.xml.sax.helpers.AttributeListImpl;
 import org.xml.sax.helpers.LocatorImpl;
 import com.sigpwned.picoxml.IXMLBuilder;
+import com.sigpwned.picoxml.IXMLCharacterBuilder;
 import com.sigpwned.picoxml.IXMLReader;
 
 
@@ -53,7 +54,7 @@ import com.sigpwned.picoxml.IXMLReader;
  *
  */
 public class SAXAdapter
-   implements IXMLBuilder
+   implements IXMLCharacterBuilder
 {
 
    /**
@@ -306,6 +307,29 @@ public class SAXAdapter
    }
 
 
+   /**
+    * This method is called when a PCDATA element is encountered. The text
+    * is passed to the document handler without copying it.
+    *
+    * @param buffer the array which contains the text
+    * @param offset the position in the array of the first character
+    * @param length the number of characters
+    * @param systemID the system ID of the data source
+    * @param lineNr the line in the source where the element starts
+    */
+   public void addCharacters(char[] buffer,
+                             int    offset,
+                             int    length,
+                             String systemID,
+                             int    lineNr)
+      throws Exception
+   {
+      this.saxLocator.setLineNumber(lineNr);
+      this.saxLocator.setSystemId(systemID);
+      this.saxDocumentHandler.characters(buffer, offset, length);
+   }
+
+
    /**
     * Returns the result of the building process. This method is called just
     * before the parse() method of IXMLParser returns.